@@ -1,10 +1,12 @@
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import customhashmap.*;
 
 class Main {
-  public static void main(String[] args) {
+  public static void main(String[] args) throws InterruptedException {
     HashMap<Integer, Integer> hm = new HashMap<>(32);
     MyHashMap<Integer, Integer> mhm = new MyHashMap<>(32);
+    IntIntMyHashMap counts = new IntIntMyHashMap(32);
     int arr[] = { 1, 2, 3, 5, 2, 6, 3, 6, 23, 6, 2, 6, 2, 4, 6, 5, 7, 2, 3, 2, 4, 6, 32, 32, 5, 3, 3, 5, 7, 5, 4, 3, 23,
         2, 4, 5, 6, 7, 78, 5, 4, 3, 4, 5, 6, 7, 5, 3, 5, 56, 4, 3, 4, 6, 7, 5, 4, 3, 1, 2, 3, 5, 2, 6, 3, 6, 23, 6, 2,
         6, 2, 4, 6, 5, 7, 2, 3, 2, 4, 6, 32, 32, 5, 3, 3, 5, 7, 5, 4, 3, 23,
@@ -23,15 +25,138 @@ class Main {
         2, 4, 5, 6, 7, 78, 5, 4, 3, 4, 5, 6, 7, 5, 3, 5, 56, 4, 3, 4, 6, 7, 5, 4, 3 };
     for (int i : arr) {
       hm.put(i, hm.getOrDefault(i, 0) + 1);
-      if (mhm.containsKey(i)) {
-        mhm.put(i, mhm.get(i) + 1);
-      } else {
-        mhm.put(i, 1);
-      }
+      mhm.merge(i, 1, Integer::sum);
+      counts.addTo(i, 1);
     }
     System.out.println(hm.size());
     System.out.println(hm);
     System.out.println(mhm.size());
     System.out.println(mhm);
+    System.out.println(counts.size());
+    System.out.println(counts);
+
+    // four threads counting the same array, every count should be 4x
+    ConcurrentMyHashMap<Integer, Integer> chm = new ConcurrentMyHashMap<>();
+    Thread workers[] = new Thread[4];
+    for (int t = 0; t < workers.length; t++) {
+      workers[t] = new Thread(() -> {
+        for (int i : arr)
+          chm.merge(i, 1, Integer::sum);
+      });
+      workers[t].start();
+    }
+    for (Thread worker : workers)
+      worker.join();
+    System.out.println(chm.size());
+    System.out.println(chm);
+
+    // the same with every count kept by the thread owning its shard
+    try (ShardedCounter<Integer> sc = new ShardedCounter<>(2)) {
+      for (int t = 0; t < workers.length; t++) {
+        workers[t] = new Thread(() -> {
+          try (ShardedCounter<Integer>.Producer p = sc.producer()) {
+            for (int i : arr)
+              p.add(i);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+        workers[t].start();
+      }
+      for (Thread worker : workers)
+        worker.join();
+      System.out.println(sc.snapshot());
+      System.out.println(sc.topK(3));
+    }
+
+    if (args.length > 0 && args[0].equals("stress")) {
+      stressTest();
+    }
+  }
+
+  // Eight threads putting, removing and merging at once, through several
+  // resizes. Every thread counts the same shared keys up and owns a range of
+  // keys nobody else touches, mirroring its changes in a plain HashMap, so
+  // after the join every value and the size are known exactly.
+  static void stressTest() throws InterruptedException {
+    int threads = 8, opsPerThread = 1000000, sharedKeys = 1024, ownKeys = 4096;
+    ConcurrentMyHashMap<Integer, Integer> chm = new ConcurrentMyHashMap<>();
+    List<Map<Integer, Integer>> expected = new ArrayList<>();
+    List<String> errors = Collections.synchronizedList(new ArrayList<>());
+    long sharedMerges[] = new long[threads];
+    Thread workers[] = new Thread[threads];
+    long start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      Map<Integer, Integer> mine = new HashMap<>();
+      expected.add(mine);
+      int base = sharedKeys + t * ownKeys, self = t;
+      workers[t] = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < opsPerThread; i++) {
+          int op = random.nextInt(5);
+          if (op == 0) {
+            chm.merge(random.nextInt(sharedKeys), 1, Integer::sum);
+            sharedMerges[self]++;
+            continue;
+          }
+          Integer k = base + random.nextInt(ownKeys), v = i, was = mine.get(k), got;
+          if (op == 1) {
+            got = chm.put(k, v);
+            mine.put(k, v);
+          } else if (op == 2) {
+            got = chm.remove(k);
+            mine.remove(k);
+          } else if (op == 3) {
+            chm.merge(k, 1, Integer::sum);
+            got = was;
+            mine.merge(k, 1, Integer::sum);
+          } else {
+            // drops the key when present, otherwise inserts it
+            chm.merge(k, v, (a, b) -> null);
+            got = was;
+            if (was == null)
+              mine.put(k, v);
+            else
+              mine.remove(k);
+          }
+          if (!Objects.equals(got, was))
+            errors.add("key " + k + " was " + got + ", expected " + was);
+        }
+      });
+      workers[t].start();
+    }
+    for (Thread worker : workers)
+      worker.join();
+    long nanos = System.nanoTime() - start;
+
+    long sharedTotal = 0, merges = 0;
+    for (long n : sharedMerges)
+      merges += n;
+    int size = 0;
+    for (int k = 0; k < sharedKeys; k++) {
+      Integer n = chm.get(k);
+      if (n != null) {
+        sharedTotal += n;
+        size++;
+      }
+    }
+    for (int t = 0; t < threads; t++) {
+      int base = sharedKeys + t * ownKeys;
+      Map<Integer, Integer> mine = expected.get(t);
+      for (int k = base; k < base + ownKeys; k++)
+        if (!Objects.equals(chm.get(k), mine.get(k)))
+          errors.add("key " + k + " is " + chm.get(k) + ", expected " + mine.get(k));
+      size += mine.size();
+    }
+    if (sharedTotal != merges)
+      errors.add("shared keys add up to " + sharedTotal + ", expected " + merges);
+    if (chm.size() != size)
+      errors.add("size is " + chm.size() + ", expected " + size);
+    long ops = (long) threads * opsPerThread;
+    System.out.println(ops + " ops, " + (ops * 1000000000L / nanos) + " ops/s, " + chm.size() + " keys, "
+        + sharedTotal + " shared merges");
+    if (!errors.isEmpty())
+      throw new IllegalStateException(errors.size() + " errors, first: " + errors.get(0));
+    System.out.println("CONSISTENT");
   }
 }
@@ -0,0 +1,127 @@
+package benchmark;
+
+import customhashmap.LongLongMyHashMap;
+import customhashmap.MyHashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+// Batched lookups with getAll() against a loop of get() calls, on tables
+// meant to be far larger than the last level cache, so that nearly every
+// lookup misses. Each round looks up random batches of existing keys, the
+// way a request handler would, and the cost is reported per key.
+//
+//   java -Xmx4g benchmark.GetAllBenchmark [sizes] [batch] [rounds]
+//   java -Xmx4g benchmark.GetAllBenchmark 1000000,8000000 1000 5
+//
+// Output is CSV, one line per map, size and mode.
+public class GetAllBenchmark {
+
+  static final int WARMUP_ROUNDS = 3, MIN_KEYS = 1 << 22;
+
+  enum Impl {
+    MY_HASH_MAP, MY_HASH_MAP_SWISS, LONG_LONG_MY_HASH_MAP
+  }
+
+  enum Mode {
+    GET_LOOP, GET_ALL
+  }
+
+  interface Target {
+    // looks up one batch and returns a checksum of the values found
+    long lookup(Mode mode, int batch[]);
+  }
+
+  static volatile long sink;
+
+  static Target create(Impl impl, long keys[], int batchSize) {
+    int n = keys.length;
+    if (impl == Impl.LONG_LONG_MY_HASH_MAP) {
+      LongLongMyHashMap m = new LongLongMyHashMap(n);
+      for (long k : keys)
+        m.put(k, k);
+      long ks[] = new long[batchSize], out[] = new long[batchSize];
+      return (mode, batch) -> {
+        long acc = 0;
+        for (int j = 0; j < batch.length; ++j)
+          ks[j] = keys[batch[j]];
+        if (mode == Mode.GET_ALL) {
+          m.getAll(ks, out, -1);
+          for (int j = 0; j < batch.length; ++j)
+            acc += out[j];
+        } else {
+          for (int j = 0; j < batch.length; ++j)
+            acc += m.get(ks[j]);
+        }
+        return acc;
+      };
+    }
+    MyHashMap<Long, Long> m = (impl == Impl.MY_HASH_MAP) ? new MyHashMap<>(n)
+        : new MyHashMap<>(n, 0.75f, MyHashMap.Engine.SWISS);
+    // keys are boxed up front, so boxing is never part of the measurement
+    Long boxed[] = new Long[n];
+    for (int i = 0; i < n; ++i) {
+      boxed[i] = keys[i];
+      m.put(boxed[i], boxed[i]);
+    }
+    Long ks[] = new Long[batchSize], out[] = new Long[batchSize];
+    return (mode, batch) -> {
+      long acc = 0;
+      for (int j = 0; j < batch.length; ++j)
+        ks[j] = boxed[batch[j]];
+      if (mode == Mode.GET_ALL) {
+        m.getAll(ks, out);
+        for (int j = 0; j < batch.length; ++j)
+          acc += out[j];
+      } else {
+        for (int j = 0; j < batch.length; ++j)
+          acc += m.get(ks[j]);
+      }
+      return acc;
+    };
+  }
+
+  // looks up MIN_KEYS keys in batches and returns the ns spent per key
+  static double round(Target t, Mode mode, int batches[][]) {
+    long acc = 0, t0 = System.nanoTime();
+    for (int batch[] : batches)
+      acc += t.lookup(mode, batch);
+    long nanos = System.nanoTime() - t0;
+    sink += acc;
+    return (double) nanos / (batches.length * batches[0].length);
+  }
+
+  public static void main(String[] args) {
+    String sizes[] = (args.length > 0 ? args[0] : "1000000,8000000").split(",");
+    int batch = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+    int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+    System.out.println("map,size,batch,mode,ns_per_key");
+    for (String size : sizes) {
+      int n = Integer.parseInt(size.trim());
+      Random r = new Random(42);
+      // distinct, so a map of size n holds n entries
+      long keys[] = new long[n];
+      HashSet<Long> seen = new HashSet<>(n * 2);
+      for (int i = 0; i < n;) {
+        long k = r.nextLong() | 1;
+        if (seen.add(k))
+          keys[i++] = k;
+      }
+      int batches[][] = new int[Math.max(1, MIN_KEYS / batch)][batch];
+      for (int b[] : batches)
+        for (int j = 0; j < batch; ++j)
+          b[j] = r.nextInt(n);
+      for (Impl impl : Impl.values()) {
+        Target t = create(impl, keys, batch);
+        for (Mode mode : Mode.values()) {
+          for (int i = 0; i < WARMUP_ROUNDS; ++i)
+            round(t, mode, batches);
+          double ns = 0;
+          for (int i = 0; i < rounds; ++i)
+            ns += round(t, mode, batches);
+          System.out.printf("%s,%d,%d,%s,%.2f%n", impl, n, batch, mode, ns / rounds);
+        }
+      }
+    }
+  }
+
+}
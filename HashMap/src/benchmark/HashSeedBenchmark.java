@@ -0,0 +1,126 @@
+package benchmark;
+
+import customhashmap.MyHashMap;
+import java.util.HashMap;
+import java.util.Random;
+
+// Prices seeded hashing on ordinary String keys and shows what it buys on
+// hostile ones. HOSTILE keys are built from the blocks "Aa" and "BB", which
+// have the same hashCode(), so every key of a given length collides in
+// hash() and lands in one treeified bucket, while the seeded map spreads
+// them like any other keys.
+//
+//   java benchmark.HashSeedBenchmark [sizes] [rounds]
+//
+// Output is CSV, one line per key set, map and size.
+public class HashSeedBenchmark {
+
+  static final int WARMUP_ROUNDS = 3, MIN_OPS = 1 << 20;
+
+  public enum Keys {
+    RANDOM, HOSTILE
+  }
+
+  interface Target {
+    void put(String k, String v);
+
+    String get(String k);
+  }
+
+  enum Impl {
+    MY_HASH_MAP, MY_HASH_MAP_SEEDED, HASH_MAP;
+
+    Target create() {
+      if (this == HASH_MAP) {
+        HashMap<String, String> m = new HashMap<>();
+        return new Target() {
+          public void put(String k, String v) {
+            m.put(k, v);
+          }
+
+          public String get(String k) {
+            return m.get(k);
+          }
+        };
+      }
+      MyHashMap<String, String> m = new MyHashMap<>();
+      m.setSeededHashing(this == MY_HASH_MAP_SEEDED);
+      return new Target() {
+        public void put(String k, String v) {
+          m.put(k, v);
+        }
+
+        public String get(String k) {
+          return m.get(k);
+        }
+      };
+    }
+  }
+
+  public static String[] keys(Keys kind, int size, Random r) {
+    String res[] = new String[size];
+    if (kind == Keys.HOSTILE) {
+      // bit j of i picks the block at position j, 2^blocks distinct keys
+      int blocks = 32 - Integer.numberOfLeadingZeros(Math.max(1, size - 1));
+      StringBuilder b = new StringBuilder();
+      for (int i = 0; i < size; i++) {
+        b.setLength(0);
+        for (int j = 0; j < blocks; j++)
+          b.append(((i >>> j) & 1) == 0 ? "Aa" : "BB");
+        res[i] = b.toString();
+      }
+    } else {
+      for (int i = 0; i < size; i++) {
+        char c[] = new char[8 + r.nextInt(17)];
+        for (int j = 0; j < c.length; j++)
+          c[j] = (char) ('a' + r.nextInt(26));
+        res[i] = new String(c);
+      }
+    }
+    return res;
+  }
+
+  static volatile long sink;
+
+  // fills a new map with keys, then looks them all up until MIN_OPS, and
+  // returns the ns per put and per get
+  static double[] round(Impl impl, String keys[]) {
+    long t0 = System.nanoTime(), acc = 0;
+    Target t = impl.create();
+    for (String k : keys)
+      t.put(k, k);
+    long t1 = System.nanoTime();
+    int gets = 0;
+    while (gets < MIN_OPS) {
+      for (String k : keys)
+        acc += t.get(k).length();
+      gets += keys.length;
+    }
+    sink += acc;
+    return new double[] { (double) (t1 - t0) / keys.length, (double) (System.nanoTime() - t1) / gets };
+  }
+
+  public static void main(String[] args) {
+    String sizes[] = (args.length > 0 ? args[0] : "1000,100000").split(",");
+    int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+    System.out.println("keys,map,size,put_ns_per_op,get_ns_per_op");
+    for (String size : sizes) {
+      int n = Integer.parseInt(size.trim());
+      for (Keys kind : Keys.values()) {
+        String keys[] = keys(kind, n, new Random(42));
+        for (Impl impl : Impl.values()) {
+          for (int r = 0; r < WARMUP_ROUNDS; r++)
+            round(impl, keys);
+          double put = 0, get = 0;
+          for (int r = 0; r < rounds; r++) {
+            double res[] = round(impl, keys);
+            put += res[0];
+            get += res[1];
+          }
+          System.out.printf("%s,%s,%d,%.2f,%.2f%n", kind, impl, n, put / rounds, get / rounds);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,273 @@
+package benchmark;
+
+import customhashmap.*;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Compares MyHashMap against the JDK maps. Every scenario is warmed up, then
+// timed over several rounds. The cost is reported per operation as nanoseconds
+// and bytes allocated by the benchmark thread, the same number JMH's
+// -prof gc reports as gc.alloc.rate.norm.
+//
+//   java benchmark.MapBenchmark [sizes] [rounds]
+//   java benchmark.MapBenchmark 1000,1000000,50000000 5
+//
+// Output is CSV, one line per scenario, map and size.
+public class MapBenchmark {
+
+  static final int WARMUP_ROUNDS = 3, MIN_OPS = 1 << 20;
+
+  interface Target {
+    void put(Integer k, Integer v);
+
+    Integer get(Integer k);
+  }
+
+  enum Impl {
+    MY_HASH_MAP {
+      Target create(int capacity) {
+        MyHashMap<Integer, Integer> m = new MyHashMap<>(capacity);
+        return new Target() {
+          public void put(Integer k, Integer v) {
+            m.put(k, v);
+          }
+
+          public Integer get(Integer k) {
+            return m.get(k);
+          }
+        };
+      }
+    },
+    MY_HASH_MAP_SWISS {
+      Target create(int capacity) {
+        MyHashMap<Integer, Integer> m = new MyHashMap<>(capacity, 0.75f, MyHashMap.Engine.SWISS);
+        return new Target() {
+          public void put(Integer k, Integer v) {
+            m.put(k, v);
+          }
+
+          public Integer get(Integer k) {
+            return m.get(k);
+          }
+        };
+      }
+    },
+    CONCURRENT_MY_HASH_MAP {
+      Target create(int capacity) {
+        ConcurrentMyHashMap<Integer, Integer> m = new ConcurrentMyHashMap<>(capacity);
+        return new Target() {
+          public void put(Integer k, Integer v) {
+            m.put(k, v);
+          }
+
+          public Integer get(Integer k) {
+            return m.get(k);
+          }
+        };
+      }
+    },
+    HASH_MAP {
+      Target create(int capacity) {
+        HashMap<Integer, Integer> m = new HashMap<>(capacity);
+        return new Target() {
+          public void put(Integer k, Integer v) {
+            m.put(k, v);
+          }
+
+          public Integer get(Integer k) {
+            return m.get(k);
+          }
+        };
+      }
+    },
+    CONCURRENT_HASH_MAP {
+      Target create(int capacity) {
+        ConcurrentHashMap<Integer, Integer> m = new ConcurrentHashMap<>(capacity);
+        return new Target() {
+          public void put(Integer k, Integer v) {
+            m.put(k, v);
+          }
+
+          public Integer get(Integer k) {
+            return m.get(k);
+          }
+        };
+      }
+    };
+
+    abstract Target create(int capacity);
+
+    // capacity that holds size entries without a resize at load factor 0.75
+    Target presized(int size) {
+      return create((int) Math.min(1 << 30, size / 0.75f + 1.0f));
+    }
+  }
+
+  enum Scenario {
+    GET_HIT, GET_MISS, PUT_NEW, PUT_OVERWRITE, RESIZE_HEAVY, ZIPF_GET
+  }
+
+  // keys are boxed up front, so boxing is never part of the measurement
+  static class Data {
+    final int size;
+    final Integer keys[], missKeys[];
+    final int order[], zipf[];
+
+    Data(int size, long seed) {
+      this.size = size;
+      Random r = new Random(seed);
+      int ops = Math.max(size, MIN_OPS);
+      keys = new Integer[size];
+      missKeys = new Integer[Math.min(size, MIN_OPS)];
+      // even ints hit, odd ints miss; the hit keys are distinct, so a map of
+      // size n holds n entries
+      HashSet<Integer> seen = new HashSet<>(size * 2);
+      for (int i = 0; i < size;) {
+        Integer k = r.nextInt() & ~1;
+        if (seen.add(k))
+          keys[i++] = k;
+      }
+      for (int i = 0; i < missKeys.length; i++)
+        missKeys[i] = (r.nextInt() | 1);
+      order = new int[ops];
+      for (int i = 0; i < ops; i++)
+        order[i] = r.nextInt(size);
+      zipf = new ZipfianGenerator(size, 0.99, r).fill(ops);
+    }
+  }
+
+  // YCSB's generator after Gray et al., "Quickly Generating Billion-Record
+  // Synthetic Databases", rank 0 is the hottest key
+  static class ZipfianGenerator {
+    final int items;
+    final double theta, zetan, alpha, eta;
+    final Random random;
+
+    ZipfianGenerator(int items, double theta, Random random) {
+      this.items = items;
+      this.theta = theta;
+      this.random = random;
+      double zeta2 = zeta(2, theta);
+      zetan = zeta(items, theta);
+      alpha = 1.0 / (1.0 - theta);
+      eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetan);
+    }
+
+    static double zeta(long n, double theta) {
+      double sum = 0;
+      for (long i = 1; i <= n; i++)
+        sum += 1 / Math.pow(i, theta);
+      return sum;
+    }
+
+    int next() {
+      double u = random.nextDouble(), uz = u * zetan;
+      if (uz < 1.0)
+        return 0;
+      if (uz < 1.0 + Math.pow(0.5, theta))
+        return Math.min(1, items - 1);
+      return Math.min(items - 1, (int) (items * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    int[] fill(int n) {
+      int res[] = new int[n];
+      for (int i = 0; i < n; i++)
+        res[i] = next();
+      return res;
+    }
+  }
+
+  static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+      .getThreadMXBean();
+  // results are folded in here so the JIT cannot drop the lookups
+  static volatile long sink;
+
+  static long allocatedBytes() {
+    return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  static Target filled(Impl impl, Data d) {
+    Target t = impl.presized(d.size);
+    for (Integer k : d.keys)
+      t.put(k, k);
+    return t;
+  }
+
+  // runs one round of the scenario and returns the number of operations
+  static long round(Scenario s, Impl impl, Data d, Target prefilled) {
+    long acc = 0;
+    int ops = d.order.length;
+    switch (s) {
+      case GET_HIT:
+        for (int i = 0; i < ops; i++) {
+          Integer v = prefilled.get(d.keys[d.order[i]]);
+          acc += (v == null) ? 0 : 1;
+        }
+        break;
+      case GET_MISS:
+        for (int i = 0, n = d.missKeys.length; i < ops; i++) {
+          Integer v = prefilled.get(d.missKeys[i % n]);
+          acc += (v == null) ? 1 : 0;
+        }
+        break;
+      case ZIPF_GET:
+        for (int i = 0; i < ops; i++) {
+          Integer v = prefilled.get(d.keys[d.zipf[i]]);
+          acc += (v == null) ? 0 : 1;
+        }
+        break;
+      case PUT_OVERWRITE:
+        for (int i = 0; i < ops; i++) {
+          Integer k = d.keys[d.order[i]];
+          prefilled.put(k, k);
+        }
+        break;
+      case PUT_NEW:
+      case RESIZE_HEAVY: {
+        // small maps are rebuilt until the round is long enough to time
+        int reps = Math.max(1, MIN_OPS / d.size);
+        for (int r = 0; r < reps; r++) {
+          Target t = (s == Scenario.PUT_NEW) ? impl.presized(d.size) : impl.create(16);
+          for (Integer k : d.keys)
+            t.put(k, k);
+        }
+        ops = reps * d.size;
+        break;
+      }
+    }
+    sink += acc;
+    return ops;
+  }
+
+  static void run(Scenario s, Impl impl, Data d, int rounds) {
+    boolean reads = s != Scenario.PUT_NEW && s != Scenario.RESIZE_HEAVY;
+    Target prefilled = reads ? filled(impl, d) : null;
+    for (int r = 0; r < WARMUP_ROUNDS; r++)
+      round(s, impl, d, prefilled);
+    long ops = 0, nanos = 0, bytes = 0;
+    for (int r = 0; r < rounds; r++) {
+      long b0 = allocatedBytes(), t0 = System.nanoTime();
+      ops += round(s, impl, d, prefilled);
+      nanos += System.nanoTime() - t0;
+      bytes += allocatedBytes() - b0;
+    }
+    System.out.printf("%s,%s,%d,%.2f,%.2f%n", s, impl, d.size, (double) nanos / ops, (double) bytes / ops);
+  }
+
+  public static void main(String[] args) {
+    String sizes[] = (args.length > 0 ? args[0] : "1000,100000,1000000").split(",");
+    int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+    System.out.println("scenario,map,size,ns_per_op,bytes_per_op");
+    for (String size : sizes) {
+      Data d = new Data(Integer.parseInt(size.trim()), 42);
+      for (Scenario s : Scenario.values()) {
+        for (Impl impl : Impl.values())
+          run(s, impl, d, rounds);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,163 @@
+package customhashmap;
+
+import java.util.function.BiConsumer;
+import java.util.function.ToIntBiFunction;
+
+// Bounded LRU cache on the CHAINED table. Every entry is also linked into an
+// access-ordered list, from the least recently used at head to the most
+// recently used at tail, so a hit is one lookup plus a few pointer writes and
+// allocates nothing. Once the total weight goes over the maximum the entries
+// at head are evicted and handed to the eviction listener. Hits, misses and
+// evictions are counted in stats(). Like MyHashMap it is not thread safe, a
+// get reorders the list so even readers need the caller's lock.
+public class CacheMyHashMap<K, V> extends MyHashMap<K, V> {
+
+  final long maximumWeight;
+  // null when every entry weighs 1
+  final ToIntBiFunction<? super K, ? super V> weigher;
+  final BiConsumer<? super K, ? super V> evictionListener;
+  LinkedEntry head, tail;
+  long weight;
+
+  final class LinkedEntry extends Entry<K, V> {
+    LinkedEntry before, after;
+    int weight;
+
+    LinkedEntry(K k, V v, int hash, Entry<K, V> next) {
+      super(k, v, hash, next);
+    }
+  }
+
+  public CacheMyHashMap(long maximumSize) {
+    this(maximumSize, null, null);
+  }
+
+  // The weigher must return a non-negative weight and is called again
+  // whenever a value is replaced. The listener is called for every evicted
+  // entry, not for explicit removals, and must not modify this map.
+  public CacheMyHashMap(long maximumWeight, ToIntBiFunction<? super K, ? super V> weigher,
+      BiConsumer<? super K, ? super V> evictionListener) {
+    super(16, DEFAULT_LOAD_FACTOR, TREEIFY_THRESHOLD);
+    if (maximumWeight < 0) {
+      throw new IllegalArgumentException("maximum weight should not be negative");
+    }
+    this.maximumWeight = maximumWeight;
+    this.weigher = weigher;
+    this.evictionListener = evictionListener;
+    // entries are needed from the first mapping on
+    adaptive = false;
+    setStatsEnabled(true);
+  }
+
+  public long weight() {
+    return weight;
+  }
+
+  public long maximumWeight() {
+    return maximumWeight;
+  }
+
+  // the least recently used key, which is evicted next, or null when empty
+  public K eldestKey() {
+    return (head == null) ? null : head.key;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    head = tail = null;
+    weight = 0;
+  }
+
+  private int weigh(K k, V v) {
+    if (weigher == null)
+      return 1;
+    int w = weigher.applyAsInt(k, v);
+    if (w < 0)
+      throw new IllegalArgumentException("negative weight " + w + " for " + k);
+    return w;
+  }
+
+  private void linkLast(LinkedEntry p) {
+    LinkedEntry last = tail;
+    tail = p;
+    if (last == null)
+      head = p;
+    else {
+      p.before = last;
+      last.after = p;
+    }
+  }
+
+  private void unlink(LinkedEntry p) {
+    LinkedEntry b = p.before, a = p.after;
+    p.before = p.after = null;
+    if (b == null)
+      head = a;
+    else
+      b.after = a;
+    if (a == null)
+      tail = b;
+    else
+      a.before = b;
+  }
+
+  private void moveToLast(LinkedEntry p) {
+    if (tail != p) {
+      unlink(p);
+      linkLast(p);
+    }
+  }
+
+  // drops entries from head until the weight fits, which may include the
+  // entry just written when it alone is heavier than the maximum
+  private void evict() {
+    LinkedEntry p;
+    while (weight > maximumWeight && (p = head) != null) {
+      removeEntry(p.hash, p.key);
+      if (stats != null)
+        stats.recordEviction();
+      if (evictionListener != null)
+        evictionListener.accept(p.key, p.value);
+    }
+  }
+
+  @Override
+  Entry<K, V> newEntry(K k, V v, int hash, Entry<K, V> next) {
+    LinkedEntry p = new LinkedEntry(k, v, hash, next);
+    p.weight = weigh(k, v);
+    weight += p.weight;
+    linkLast(p);
+    return p;
+  }
+
+  @Override
+  void afterInsert() {
+    evict();
+  }
+
+  @Override
+  void afterAccess(Entry<K, V> e) {
+    moveToLast((LinkedEntry) e);
+  }
+
+  @Override
+  void afterWrite(Entry<K, V> e) {
+    LinkedEntry p = (LinkedEntry) e;
+    if (weigher != null) {
+      int w = weigh(p.key, p.value);
+      weight += w - p.weight;
+      p.weight = w;
+    }
+    moveToLast(p);
+    evict();
+  }
+
+  @Override
+  void afterUnlink(Entry<K, V> e) {
+    LinkedEntry p = (LinkedEntry) e;
+    weight -= p.weight;
+    unlink(p);
+  }
+
+}
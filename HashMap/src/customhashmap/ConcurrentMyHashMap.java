@@ -0,0 +1,538 @@
+package customhashmap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiFunction;
+
+// Thread safe counterpart of MyHashMap. Reads take no locks, an empty bucket
+// is filled with a CAS, a non-empty one is updated under the lock of its head
+// node, and the size lives in a base count striped into cells once writers
+// contend on it, like ConcurrentHashMap's. Writers that run into a
+// resize claim strides of buckets and help move them to the new table.
+// Null keys and values are not allowed, a null result always means absent.
+public class ConcurrentMyHashMap<K, V> {
+
+  static final int DEFAULT_INITIAL_CAPACITY = 16, MAXIMUM_CAPACITY = 1 << 30;
+  // hash of forwarding nodes, real hashes are kept non-negative
+  static final int MOVED = -1, HASH_BITS = 0x7fffffff;
+  static final int MIN_TRANSFER_STRIDE = 16;
+  static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+  static class Node<K, V> {
+    final int hash;
+    final K key;
+    volatile V value;
+    volatile Node<K, V> next;
+
+    Node(int hash, K k, V v, Node<K, V> next) {
+      this.hash = hash;
+      this.key = k;
+      this.value = v;
+      this.next = next;
+    }
+
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+
+  // placed in a moved bucket of the old table, sends readers to the new one
+  static final class ForwardingNode<K, V> extends Node<K, V> {
+    final Node<K, V>[] nextTable;
+
+    ForwardingNode(Node<K, V>[] nextTable) {
+      super(MOVED, null, null, null);
+      this.nextTable = nextTable;
+    }
+
+    Node<K, V> find(int h, Object k) {
+      outer: for (Node<K, V>[] tab = nextTable;;) {
+        Node<K, V> e;
+        int n;
+        if (tab == null || (n = tab.length) == 0 || (e = tabAt(tab, (n - 1) & h)) == null)
+          return null;
+        for (;;) {
+          int eh;
+          K ek;
+          if ((eh = e.hash) == h && ((ek = e.key) == k || (ek != null && k.equals(ek))))
+            return e;
+          if (eh < 0) {
+            tab = ((ForwardingNode<K, V>) e).nextTable;
+            continue outer;
+          }
+          if ((e = e.next) == null)
+            return null;
+        }
+      }
+    }
+  }
+
+  volatile Node<K, V>[] table, nextTable;
+  // table == null: initial capacity, -1: initializing or committing a resize,
+  // < -1: resizing with -(sizeCtl + 1) active movers, otherwise the threshold
+  volatile int sizeCtl;
+  // buckets below transferIndex are still waiting to be claimed by a mover
+  volatile int transferIndex;
+  // the size is baseCount plus the cells, which are created the first time
+  // two writers collide on baseCount and are never resized
+  volatile long baseCount;
+  volatile CounterCell counterCells[];
+
+  static final class CounterCell {
+    volatile long value;
+  }
+
+  private static final VarHandle TAB, SIZECTL, TRANSFERINDEX, BASECOUNT, COUNTERCELLS, CELLVALUE;
+  static {
+    try {
+      MethodHandles.Lookup l = MethodHandles.lookup();
+      TAB = MethodHandles.arrayElementVarHandle(Node[].class);
+      SIZECTL = l.findVarHandle(ConcurrentMyHashMap.class, "sizeCtl", int.class);
+      TRANSFERINDEX = l.findVarHandle(ConcurrentMyHashMap.class, "transferIndex", int.class);
+      BASECOUNT = l.findVarHandle(ConcurrentMyHashMap.class, "baseCount", long.class);
+      COUNTERCELLS = l.findVarHandle(ConcurrentMyHashMap.class, "counterCells", CounterCell[].class);
+      CELLVALUE = l.findVarHandle(CounterCell.class, "value", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  public ConcurrentMyHashMap(int iniCap) {
+    if (iniCap <= 0) {
+      throw new IllegalArgumentException("initial capacity should be greater than 0");
+    }
+    this.sizeCtl = MyHashMap.tableSizeFor(iniCap);
+  }
+
+  public ConcurrentMyHashMap() {
+  }
+
+  // MyHashMap.hash() without its null case, kept non-negative
+  static final int spread(Object k) {
+    int h = k.hashCode();
+    return (h ^ (h >>> 16)) & HASH_BITS;
+  }
+
+  @SuppressWarnings("unchecked")
+  static final <K, V> Node<K, V> tabAt(Node<K, V>[] tab, int i) {
+    return (Node<K, V>) TAB.getAcquire(tab, i);
+  }
+
+  static final <K, V> boolean casTabAt(Node<K, V>[] tab, int i, Node<K, V> c, Node<K, V> v) {
+    return TAB.compareAndSet(tab, i, c, v);
+  }
+
+  static final <K, V> void setTabAt(Node<K, V>[] tab, int i, Node<K, V> v) {
+    TAB.setRelease(tab, i, v);
+  }
+
+  public int size() {
+    long n = sumCount();
+    return (n < 0L) ? 0 : (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n;
+  }
+
+  public boolean isEmpty() {
+    return sumCount() <= 0L;
+  }
+
+  public V get(Object k) {
+    Node<K, V> tab[], e;
+    int n, eh, h = spread(k);
+    K ek;
+    if ((tab = table) != null && (n = tab.length) > 0 && (e = tabAt(tab, (n - 1) & h)) != null) {
+      if ((eh = e.hash) == h) {
+        if ((ek = e.key) == k || (ek != null && k.equals(ek)))
+          return e.value;
+      } else if (eh < 0) {
+        return (e = ((ForwardingNode<K, V>) e).find(h, k)) != null ? e.value : null;
+      }
+      while ((e = e.next) != null) {
+        if (e.hash == h && ((ek = e.key) == k || (ek != null && k.equals(ek))))
+          return e.value;
+      }
+    }
+    return null;
+  }
+
+  public boolean containsKey(Object k) {
+    return get(k) != null;
+  }
+
+  public V put(K k, V v) {
+    return putVal(k, v, false);
+  }
+
+  public V putIfAbsent(K k, V v) {
+    return putVal(k, v, true);
+  }
+
+  final V putVal(K k, V v, boolean onlyIfAbsent) {
+    if (k == null || v == null)
+      throw new NullPointerException();
+    int hash = spread(k), binCount = 0;
+    for (Node<K, V> tab[] = table;;) {
+      Node<K, V> f;
+      int n, i;
+      if (tab == null || (n = tab.length) == 0)
+        tab = initTable();
+      else if ((f = tabAt(tab, i = (n - 1) & hash)) == null) {
+        if (casTabAt(tab, i, null, new Node<K, V>(hash, k, v, null)))
+          break;
+      } else if (f.hash == MOVED)
+        tab = helpTransfer(tab, f);
+      else {
+        V oldVal = null;
+        synchronized (f) {
+          if (tabAt(tab, i) == f) {
+            binCount = 1;
+            for (Node<K, V> e = f;; ++binCount) {
+              K ek;
+              if (e.hash == hash && ((ek = e.key) == k || k.equals(ek))) {
+                oldVal = e.value;
+                if (!onlyIfAbsent)
+                  e.value = v;
+                break;
+              }
+              Node<K, V> pred = e;
+              if ((e = e.next) == null) {
+                pred.next = new Node<K, V>(hash, k, v, null);
+                break;
+              }
+            }
+          }
+        }
+        if (binCount != 0) {
+          if (oldVal != null)
+            return oldVal;
+          break;
+        }
+      }
+    }
+    addCount(1L, binCount);
+    return null;
+  }
+
+  // atomically combines v with the current value, removing the key when fn
+  // returns null
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> fn) {
+    if (k == null || v == null || fn == null)
+      throw new NullPointerException();
+    int hash = spread(k), binCount = 0, delta = 0;
+    V val = null;
+    for (Node<K, V> tab[] = table;;) {
+      Node<K, V> f;
+      int n, i;
+      if (tab == null || (n = tab.length) == 0)
+        tab = initTable();
+      else if ((f = tabAt(tab, i = (n - 1) & hash)) == null) {
+        if (casTabAt(tab, i, null, new Node<K, V>(hash, k, v, null))) {
+          delta = 1;
+          val = v;
+          break;
+        }
+      } else if (f.hash == MOVED)
+        tab = helpTransfer(tab, f);
+      else {
+        synchronized (f) {
+          if (tabAt(tab, i) == f) {
+            binCount = 1;
+            for (Node<K, V> e = f, pred = null;; ++binCount) {
+              K ek;
+              if (e.hash == hash && ((ek = e.key) == k || k.equals(ek))) {
+                val = fn.apply(e.value, v);
+                if (val != null)
+                  e.value = val;
+                else {
+                  delta = -1;
+                  Node<K, V> en = e.next;
+                  if (pred != null)
+                    pred.next = en;
+                  else
+                    setTabAt(tab, i, en);
+                }
+                break;
+              }
+              pred = e;
+              if ((e = e.next) == null) {
+                delta = 1;
+                val = v;
+                pred.next = new Node<K, V>(hash, k, v, null);
+                break;
+              }
+            }
+          }
+        }
+        if (binCount != 0)
+          break;
+      }
+    }
+    if (delta != 0)
+      addCount((long) delta, (delta < 0) ? -1 : binCount);
+    return val;
+  }
+
+  public V remove(Object k) {
+    int hash = spread(k);
+    for (Node<K, V> tab[] = table;;) {
+      Node<K, V> f;
+      int n, i;
+      if (tab == null || (n = tab.length) == 0 || (f = tabAt(tab, i = (n - 1) & hash)) == null)
+        return null;
+      else if (f.hash == MOVED)
+        tab = helpTransfer(tab, f);
+      else {
+        V oldVal = null;
+        boolean validated = false;
+        synchronized (f) {
+          if (tabAt(tab, i) == f) {
+            validated = true;
+            for (Node<K, V> e = f, pred = null; e != null; pred = e, e = e.next) {
+              K ek;
+              if (e.hash == hash && ((ek = e.key) == k || (ek != null && k.equals(ek)))) {
+                oldVal = e.value;
+                if (pred != null)
+                  pred.next = e.next;
+                else
+                  setTabAt(tab, i, e.next);
+                break;
+              }
+            }
+          }
+        }
+        if (validated) {
+          if (oldVal != null)
+            addCount(-1L, -1);
+          return oldVal;
+        }
+      }
+    }
+  }
+
+  private Node<K, V>[] initTable() {
+    Node<K, V> tab[];
+    int sc;
+    while ((tab = table) == null || tab.length == 0) {
+      if ((sc = sizeCtl) < 0)
+        Thread.yield();
+      else if (SIZECTL.compareAndSet(this, sc, -1)) {
+        try {
+          if ((tab = table) == null || tab.length == 0) {
+            int n = (sc > 0) ? sc : DEFAULT_INITIAL_CAPACITY;
+            @SuppressWarnings("unchecked")
+            Node<K, V>[] nt = (Node<K, V>[]) new Node<?, ?>[n];
+            table = tab = nt;
+            sc = n - (n >>> 2);
+          }
+        } finally {
+          sizeCtl = sc;
+        }
+        break;
+      }
+    }
+    return tab;
+  }
+
+  final long sumCount() {
+    long sum = baseCount;
+    CounterCell cs[] = counterCells;
+    if (cs != null)
+      for (CounterCell c : cs)
+        if (c != null)
+          sum += c.value;
+    return sum;
+  }
+
+  // Adds x to the size and, for inserts (check >= 0), resizes once it
+  // reaches the threshold. As in ConcurrentHashMap, an add that won the CAS
+  // on baseCount checks the new base, which is the whole size while there
+  // are no cells, so the cells are only summed for an insert into a bin that
+  // was already longer than one node. An add that collided with another
+  // leaves the check to the next insert.
+  private void addCount(long x, int check) {
+    CounterCell cs[];
+    long b, s;
+    if ((cs = counterCells) != null || !BASECOUNT.compareAndSet(this, b = baseCount, s = b + x)) {
+      CounterCell c;
+      long v;
+      if (cs == null || (c = cs[cellIndex() & (cs.length - 1)]) == null
+          || !CELLVALUE.compareAndSet(c, v = c.value, v + x)) {
+        fullAddCount(x);
+        return;
+      }
+      if (check <= 1)
+        return;
+      s = sumCount();
+    }
+    if (check < 0)
+      return;
+    Node<K, V> tab[], nt[];
+    int n, sc;
+    while (s >= (long) (sc = sizeCtl) && (tab = table) != null && (n = tab.length) < MAXIMUM_CAPACITY) {
+      if (sc < 0) {
+        if (sc == -1 || (nt = nextTable) == null || transferIndex <= 0)
+          break;
+        if (SIZECTL.compareAndSet(this, sc, sc - 1)) {
+          if (nextTable == nt && table == tab)
+            transfer(tab, nt);
+          leaveTransfer();
+        }
+      } else if (SIZECTL.compareAndSet(this, sc, -2)) {
+        @SuppressWarnings("unchecked")
+        Node<K, V>[] fresh = (Node<K, V>[]) new Node<?, ?>[n << 1];
+        transferIndex = n;
+        nextTable = fresh;
+        transfer(tab, fresh);
+        leaveTransfer();
+      }
+      s = sumCount();
+    }
+  }
+
+  // the cell a thread adds to while it does not collide
+  static int cellIndex() {
+    int h = System.identityHashCode(Thread.currentThread());
+    return h ^ (h >>> 16);
+  }
+
+  // adds x after a collision, creating the cells on the first one and then
+  // trying random cells, each as likely to be free
+  private void fullAddCount(long x) {
+    CounterCell cs[] = counterCells;
+    if (cs == null) {
+      CounterCell fresh[] = new CounterCell[MyHashMap.tableSizeFor(NCPU)];
+      for (int i = 0; i < fresh.length; ++i)
+        fresh[i] = new CounterCell();
+      cs = COUNTERCELLS.compareAndExchange(this, null, fresh) == null ? fresh : counterCells;
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (;;) {
+      CounterCell c = cs[random.nextInt() & (cs.length - 1)];
+      long v = c.value;
+      if (CELLVALUE.compareAndSet(c, v, v + x))
+        return;
+    }
+  }
+
+  final Node<K, V>[] helpTransfer(Node<K, V>[] tab, Node<K, V> f) {
+    Node<K, V> nextTab[];
+    int sc;
+    if ((nextTab = ((ForwardingNode<K, V>) f).nextTable) != null) {
+      while (nextTab == nextTable && table == tab && (sc = sizeCtl) < -1 && transferIndex > 0) {
+        if (SIZECTL.compareAndSet(this, sc, sc - 1)) {
+          // the resize we saw may have finished before we joined
+          if (nextTable == nextTab && table == tab)
+            transfer(tab, nextTab);
+          leaveTransfer();
+          break;
+        }
+      }
+      return nextTab;
+    }
+    return table;
+  }
+
+  // the last mover to leave publishes the new table
+  private void leaveTransfer() {
+    for (;;) {
+      int sc = sizeCtl;
+      if (SIZECTL.compareAndSet(this, sc, sc + 1)) {
+        if (sc + 1 == -1) {
+          Node<K, V> nt[] = nextTable;
+          table = nt;
+          nextTable = null;
+          sizeCtl = nt.length - (nt.length >>> 2);
+        }
+        return;
+      }
+    }
+  }
+
+  private void transfer(Node<K, V>[] tab, Node<K, V>[] nextTab) {
+    int n = tab.length, stride;
+    if ((stride = (n >>> 3) / NCPU) < MIN_TRANSFER_STRIDE)
+      stride = MIN_TRANSFER_STRIDE;
+    ForwardingNode<K, V> fwd = new ForwardingNode<K, V>(nextTab);
+    for (;;) {
+      int ti, bound;
+      do {
+        if ((ti = transferIndex) <= 0)
+          return;
+      } while (!TRANSFERINDEX.compareAndSet(this, ti, bound = (ti > stride) ? ti - stride : 0));
+      for (int i = ti - 1; i >= bound; --i)
+        transferBin(tab, i, nextTab, fwd);
+    }
+  }
+
+  // Splits bucket i into the low and high buckets of nextTab. The old nodes
+  // are copied rather than relinked, except for the trailing run that already
+  // goes to one side, because readers may still be walking the old chain.
+  private void transferBin(Node<K, V>[] tab, int i, Node<K, V>[] nextTab, ForwardingNode<K, V> fwd) {
+    int n = tab.length;
+    for (;;) {
+      Node<K, V> f;
+      if ((f = tabAt(tab, i)) == null) {
+        if (casTabAt(tab, i, null, fwd))
+          return;
+        continue;
+      }
+      synchronized (f) {
+        if (tabAt(tab, i) != f)
+          continue;
+        int runBit = f.hash & n;
+        Node<K, V> lastRun = f, ln, hn;
+        for (Node<K, V> p = f.next; p != null; p = p.next) {
+          int b = p.hash & n;
+          if (b != runBit) {
+            runBit = b;
+            lastRun = p;
+          }
+        }
+        if (runBit == 0) {
+          ln = lastRun;
+          hn = null;
+        } else {
+          hn = lastRun;
+          ln = null;
+        }
+        for (Node<K, V> p = f; p != lastRun; p = p.next) {
+          if ((p.hash & n) == 0)
+            ln = new Node<K, V>(p.hash, p.key, p.value, ln);
+          else
+            hn = new Node<K, V>(p.hash, p.key, p.value, hn);
+        }
+        setTabAt(nextTab, i, ln);
+        setTabAt(nextTab, i + n, hn);
+        setTabAt(tab, i, fwd);
+        return;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder res = new StringBuilder("{");
+    Node<K, V> tab[] = table;
+    if (tab != null) {
+      for (int i = 0; i < tab.length; i++)
+        appendBin(res, tab, i, tab.length);
+    }
+    if (res.length() > 1)
+      res.setLength(res.length() - 2);
+    return res.append('}').toString();
+  }
+
+  // a moved bucket i of a table of length n sits at i, i + n, ... of the next
+  private void appendBin(StringBuilder res, Node<K, V>[] tab, int i, int n) {
+    for (int j = i; j < tab.length; j += n) {
+      for (Node<K, V> e = tabAt(tab, j); e != null; e = e.next) {
+        if (e.hash == MOVED) {
+          appendBin(res, ((ForwardingNode<K, V>) e).nextTable, j, tab.length);
+          break;
+        }
+        res.append(e).append(", ");
+      }
+    }
+  }
+
+}
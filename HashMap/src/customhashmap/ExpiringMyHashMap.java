@@ -0,0 +1,302 @@
+package customhashmap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// MyHashMap whose entries expire a time-to-live after they were last written.
+// Every entry with a deadline is also linked into a hierarchical timing
+// wheel: 5 levels of 64 slots, the first ticking every 2^20 ns (about 1 ms)
+// and each next one 64 times slower, up to about 13 days a turn. Each call
+// first advances the wheel to the current time, visiting only the slots
+// it has entered, so expiring n entries costs O(n) plus the slots visited
+// and never a scan of the table. Entries the wheel has not reached yet are
+// still treated as absent by the lookups once their deadline is over.
+// Nothing runs on its own: cleanUp() advances the wheel without any other
+// call, to be run periodically, e.g. from a ScheduledExecutorService, under
+// the same lock as every other call since this class is not thread safe.
+// size() and the views may include expired entries the wheel has not
+// reached, calling cleanUp() first makes them exact to within a tick.
+public class ExpiringMyHashMap<K, V> extends MyHashMap<K, V> {
+
+  static final int WHEEL_BITS = 6, WHEEL_SIZE = 1 << WHEEL_BITS, WHEEL_MASK = WHEEL_SIZE - 1;
+  // ns per tick of each level is 1 << SHIFT[i]
+  static final int SHIFT[] = { 20, 26, 32, 38, 44 };
+  static final long NEVER = Long.MAX_VALUE;
+
+  final long defaultTtlNanos;
+  final LongSupplier ticker;
+  // wheel[i][j] is the sentinel of slot j at level i
+  final TimedEntry wheel[][];
+  // the time the wheel was last advanced to
+  long nanos;
+  // deadline handed to the entries written by the call in progress
+  long pendingDeadline = NEVER;
+
+  final class TimedEntry extends Entry<K, V> {
+    long deadline = NEVER;
+    TimedEntry prevInSlot, nextInSlot;
+
+    TimedEntry(K k, V v, int hash, Entry<K, V> next) {
+      super(k, v, hash, next);
+    }
+  }
+
+  // entries written without a ttl never expire
+  public ExpiringMyHashMap() {
+    this(NEVER, TimeUnit.NANOSECONDS);
+  }
+
+  public ExpiringMyHashMap(long defaultTtl, TimeUnit unit) {
+    this(defaultTtl, unit, System::nanoTime);
+  }
+
+  // ticker returns nanoseconds like System.nanoTime(), tests may pass a fake
+  public ExpiringMyHashMap(long defaultTtl, TimeUnit unit, LongSupplier ticker) {
+    super(16, DEFAULT_LOAD_FACTOR, TREEIFY_THRESHOLD);
+    if (defaultTtl < 0) {
+      throw new IllegalArgumentException("ttl should not be negative");
+    }
+    this.defaultTtlNanos = unit.toNanos(defaultTtl);
+    this.ticker = ticker;
+    @SuppressWarnings("unchecked")
+    TimedEntry wheel[][] = (TimedEntry[][]) new ExpiringMyHashMap<?, ?>.TimedEntry[SHIFT.length][WHEEL_SIZE];
+    this.wheel = wheel;
+    for (TimedEntry level[] : wheel) {
+      for (int j = 0; j < WHEEL_SIZE; ++j) {
+        TimedEntry sentinel = new TimedEntry(null, null, 0, null);
+        sentinel.prevInSlot = sentinel.nextInSlot = sentinel;
+        level[j] = sentinel;
+      }
+    }
+    this.nanos = ticker.getAsLong();
+    // entries are needed from the first mapping on
+    adaptive = false;
+  }
+
+  static long deadline(long now, long ttlNanos) {
+    // toNanos() saturates, a ttl that long means never
+    return (ttlNanos == NEVER) ? NEVER : now + ttlNanos;
+  }
+
+  static boolean expired(long deadline, long now) {
+    return deadline != NEVER && deadline - now <= 0;
+  }
+
+  // Moves the wheel to the current time and returns it. Every slot a level
+  // has entered since the last call is emptied, from the top level down,
+  // expiring the due entries and moving the others down to the level that
+  // covers their deadline, in time for that level to reach their slot. A
+  // level is only looked at when its tick changed.
+  final long advance() {
+    long previous = nanos, now = ticker.getAsLong();
+    nanos = now;
+    for (int i = SHIFT.length - 1; i >= 0; --i) {
+      long ticks = now >> SHIFT[i], delta = ticks - (previous >> SHIFT[i]);
+      if (delta <= 0)
+        continue;
+      for (long t = ticks - Math.min(delta, WHEEL_SIZE) + 1; t <= ticks; ++t)
+        expireSlot(wheel[i][(int) t & WHEEL_MASK], now);
+    }
+    return now;
+  }
+
+  private void expireSlot(TimedEntry sentinel, long now) {
+    TimedEntry e = sentinel.nextInSlot;
+    if (e == sentinel)
+      return;
+    sentinel.prevInSlot = sentinel.nextInSlot = sentinel;
+    while (e != sentinel) {
+      TimedEntry next = e.nextInSlot;
+      e.prevInSlot = e.nextInSlot = null;
+      if (expired(e.deadline, now))
+        expire(e);
+      else
+        schedule(e);
+      e = next;
+    }
+  }
+
+  private void expire(TimedEntry e) {
+    removeEntry(e.hash, e.key);
+    if (stats != null)
+      stats.recordEviction();
+  }
+
+  // Links e into the slot of the lowest level whose turn covers its deadline.
+  // A deadline within the current tick goes to the next one, as the wheel
+  // has been through the current slot already.
+  private void schedule(TimedEntry e) {
+    long d = e.deadline, delay = d - nanos;
+    int i = 0;
+    while (i < SHIFT.length - 1 && delay >= (1L << SHIFT[i + 1]))
+      ++i;
+    if (i == 0)
+      d = Math.max(d, ((nanos >> SHIFT[0]) + 1) << SHIFT[0]);
+    TimedEntry sentinel = wheel[i][(int) (d >> SHIFT[i]) & WHEEL_MASK], last = sentinel.prevInSlot;
+    e.prevInSlot = last;
+    e.nextInSlot = sentinel;
+    last.nextInSlot = e;
+    sentinel.prevInSlot = e;
+  }
+
+  private void unschedule(TimedEntry e) {
+    if (e.nextInSlot != null) {
+      e.prevInSlot.nextInSlot = e.nextInSlot;
+      e.nextInSlot.prevInSlot = e.prevInSlot;
+      e.prevInSlot = e.nextInSlot = null;
+    }
+  }
+
+  // the entry of k, after expiring it when it is due
+  private Entry<K, V> liveEntry(K k, long now) {
+    if (prevTable != null)
+      transferStep();
+    Entry<K, V> e = getEntry(hashOf(k), k);
+    if (e != null && expired(((TimedEntry) e).deadline, now)) {
+      expire((TimedEntry) e);
+      return null;
+    }
+    return e;
+  }
+
+  // readies a write of k, which keeps the default ttl
+  private void beforeWrite(K k) {
+    long now = advance();
+    liveEntry(k, now);
+    pendingDeadline = deadline(now, defaultTtlNanos);
+  }
+
+  // advances the wheel, expiring everything due, without any other call
+  public void cleanUp() {
+    advance();
+  }
+
+  // nanoseconds until k expires, NEVER when it does not, -1 when absent
+  public long ttlNanos(K k) {
+    long now = advance();
+    Entry<K, V> e = liveEntry(k, now);
+    if (e == null)
+      return -1;
+    long d = ((TimedEntry) e).deadline;
+    return (d == NEVER) ? NEVER : d - now;
+  }
+
+  public V put(K k, V v, long ttl, TimeUnit unit) {
+    if (ttl < 0) {
+      throw new IllegalArgumentException("ttl should not be negative");
+    }
+    long now = advance();
+    liveEntry(k, now);
+    pendingDeadline = deadline(now, unit.toNanos(ttl));
+    return super.put(k, v);
+  }
+
+  @Override
+  public V put(K k, V v) {
+    beforeWrite(k);
+    return super.put(k, v);
+  }
+
+  @Override
+  public V putIfAbsent(K k, V v) {
+    beforeWrite(k);
+    return super.putIfAbsent(k, v);
+  }
+
+  @Override
+  public void putAll(MyHashMap<? extends K, ? extends V> m) {
+    pendingDeadline = deadline(advance(), defaultTtlNanos);
+    super.putAll(m);
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    Entry<K, V> e = liveEntry(k, advance());
+    if (stats != null)
+      stats.recordGet(e != null);
+    return (e == null) ? defaultValue : e.value;
+  }
+
+  // one key at a time, since every hit has to be checked against its deadline
+  @Override
+  public void getAll(K keys[], V out[]) {
+    if (out.length < keys.length) {
+      throw new IllegalArgumentException("out is shorter than keys");
+    }
+    for (int j = 0; j < keys.length; ++j)
+      out[j] = getOrDefault(keys[j], null);
+  }
+
+  @Override
+  public boolean containsKey(K k) {
+    return liveEntry(k, advance()) != null;
+  }
+
+  @Override
+  public V remove(K k) {
+    beforeWrite(k);
+    return super.remove(k);
+  }
+
+  @Override
+  public boolean remove(K k, V v) {
+    beforeWrite(k);
+    return super.remove(k, v);
+  }
+
+  @Override
+  public V computeIfAbsent(K k, Function<? super K, ? extends V> mappingFunction) {
+    beforeWrite(k);
+    return super.computeIfAbsent(k, mappingFunction);
+  }
+
+  @Override
+  public V computeIfPresent(K k, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    beforeWrite(k);
+    return super.computeIfPresent(k, remappingFunction);
+  }
+
+  @Override
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    beforeWrite(k);
+    return super.compute(k, remappingFunction);
+  }
+
+  @Override
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    beforeWrite(k);
+    return super.merge(k, v, remappingFunction);
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    for (TimedEntry level[] : wheel)
+      for (TimedEntry sentinel : level)
+        sentinel.prevInSlot = sentinel.nextInSlot = sentinel;
+  }
+
+  @Override
+  Entry<K, V> newEntry(K k, V v, int hash, Entry<K, V> next) {
+    TimedEntry e = new TimedEntry(k, v, hash, next);
+    if ((e.deadline = pendingDeadline) != NEVER)
+      schedule(e);
+    return e;
+  }
+
+  @Override
+  void afterWrite(Entry<K, V> e) {
+    TimedEntry t = (TimedEntry) e;
+    unschedule(t);
+    if ((t.deadline = pendingDeadline) != NEVER)
+      schedule(t);
+  }
+
+  @Override
+  void afterUnlink(Entry<K, V> e) {
+    unschedule((TimedEntry) e);
+  }
+
+}
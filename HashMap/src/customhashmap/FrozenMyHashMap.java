@@ -0,0 +1,382 @@
+package customhashmap;
+
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+
+// Immutable map built once by MyHashMap.freeze() on a minimal perfect hash,
+// for tables that are written at startup and then only read. Placement
+// follows CHD and PTHash: the keys are split into partitions of about
+// PARTITION_KEYS by their 64-bit hash, every partition into buckets of about
+// LAMBDA keys, and every bucket gets a pilot, the first of a series of masks
+// under which all its keys land on slots no other key took. A lookup is
+// then the pilot of its bucket and exactly one slot, with no chain walk and
+// no probing. Pilots range over a few more slots than keys, which spares
+// the last buckets of a partition hundreds of trials for the last free
+// slots, and the few keys that land past the key count are remapped to the
+// slots left free below it, so there are exactly as many slots as keys.
+// Keys and values are packed side by side in one array, a key at 2 * slot
+// and its value right after it, and a pilot takes a char, about 17 bytes
+// per mapping in all against some 40 in the chained table.
+// Partitions are independent, so they are built in parallel on the common
+// ForkJoinPool, as are hashing and splitting the keys into partitions.
+// The hash is the seeded murmur3 finalizer of hashCode(), of the full value
+// for Long keys, so distinct keys with equal hashCodes are impossible to
+// tell apart; all but one of each such group go to a small MyHashMap that
+// lookups fall back to after a mismatch, and stay out of the slot count.
+public final class FrozenMyHashMap<K, V> {
+
+  static final int PARTITION_KEYS = 1 << 13, LAMBDA = 2;
+  // keys hashed and split per parallel task
+  static final int CHUNK = 1 << 16;
+  // pilots are stored in a char, the most tried for one bucket is a few
+  // hundred and a build that runs out starts over with another seed
+  static final int MAX_PILOT = 1 << 16;
+  static final long MUL = 0x9e3779b97f4a7c15L;
+  // a partition of m keys hashes onto m + (m >>> EXTRA_SHIFT) + 1 slots
+  static final int EXTRA_SHIFT = 4;
+
+  final int size, partitions;
+  final long seed;
+  // keys and values interleaved
+  final Object slots[];
+  // Partition p is described from meta[p * META], in one cache line: its
+  // first slot, the slots it uses, which are as many as its keys, the slots
+  // its keys hash onto, a few more, its first bucket and its buckets, and
+  // where its remap entries start.
+  static final int META = 6, SLOT_START = 0, SLOTS = 1, TABLE = 2, BUCKET_START = 3, BUCKETS = 4, REMAP_START = 5;
+  final int meta[];
+  // pilots, as trial numbers, one per bucket
+  final char pilots[];
+  // the slot below SLOTS that slot SLOTS + j of a partition stands for, at
+  // its REMAP_START + j
+  final int remap[];
+  // keys whose hash equals that of another key, or null
+  final MyHashMap<K, V> overflow;
+
+  private static final class NoPilotException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    NoPilotException() {
+      super(null, null, false, false);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private FrozenMyHashMap(Object keys[], Object values[], long seed) {
+    int n = keys.length;
+    this.size = n;
+    this.seed = seed;
+    this.partitions = Math.max(1, n / PARTITION_KEYS);
+    // the keys, values and hashes in partition order
+    Object pk[] = new Object[n], pv[] = new Object[n];
+    long ph[] = new long[n];
+    int start[] = splitPartitions(keys, values, pk, pv, ph);
+    this.slots = new Object[n << 1];
+    // SLOTS counts the partition's keys until it is built
+    int meta[] = this.meta = new int[partitions * META], buckets = 0, remaps = 0;
+    for (int p = 0; p < partitions; ++p) {
+      int at = p * META, keysIn = start[p + 1] - start[p];
+      meta[at + SLOT_START] = start[p];
+      meta[at + SLOTS] = keysIn;
+      meta[at + BUCKET_START] = buckets;
+      buckets += meta[at + BUCKETS] = buckets(keysIn);
+      meta[at + REMAP_START] = remaps;
+      remaps += extra(keysIn);
+    }
+    this.pilots = new char[buckets];
+    this.remap = new int[remaps];
+    boolean duplicate[] = new boolean[n];
+    int dups = IntStream.range(0, partitions).parallel()
+        .map(p -> buildPartition(p, pk, pv, ph, duplicate)).sum();
+    MyHashMap<K, V> o = null;
+    if (dups > 0) {
+      o = new MyHashMap<>();
+      for (int i = 0; i < n; ++i)
+        if (duplicate[i])
+          o.put((K) pk[i], (V) pv[i]);
+    }
+    this.overflow = o;
+  }
+
+  static <K, V> FrozenMyHashMap<K, V> of(MyHashMap<K, V> m) {
+    int n = m.size(), at[] = { 0 };
+    Object keys[] = new Object[n], values[] = new Object[n];
+    m.forEach((k, v) -> {
+      keys[at[0]] = k;
+      values[at[0]++] = v;
+    });
+    for (;;) {
+      try {
+        return new FrozenMyHashMap<>(keys, values, SeededHash.newSeed());
+      } catch (NoPilotException e) {
+        // a bucket none of the pilots could place, never seen in practice
+      }
+    }
+  }
+
+  static int buckets(int keys) {
+    return Math.max(1, (keys + LAMBDA - 1) / LAMBDA);
+  }
+
+  static int extra(int keys) {
+    return (keys >>> EXTRA_SHIFT) + 1;
+  }
+
+  final long pilot(int trial) {
+    return (trial * MUL) ^ seed;
+  }
+
+  final long hash(Object k) {
+    long h = (k instanceof Long) ? (Long) k : (k == null) ? 0 : k.hashCode();
+    return SeededHash.fmix64(h ^ seed);
+  }
+
+  // maps the high half of h onto [0, n) by multiply-shift, which needs
+  // neither a division nor a power of two
+  static int reduce(long h, int n) {
+    return (int) (((h >>> 32) * n) >>> 32);
+  }
+
+  // partitions take the high bits of the hash, buckets the low ones and the
+  // slot mixes all of them with the pilot
+  final int partition(long h) {
+    return reduce(h, partitions);
+  }
+
+  static int bucket(long h, int buckets) {
+    return reduce(h << 32, buckets);
+  }
+
+  static int slot(long h, long pilot, int slots) {
+    return reduce((h ^ pilot) * MUL, slots);
+  }
+
+  // Copies the keys, values and their hashes into pk, pv and ph sorted by
+  // partition, so that every partition is built from contiguous memory. It
+  // is a counting sort over chunks run in parallel: each chunk counts its
+  // keys per partition, the counts become each chunk's starting offsets,
+  // and each chunk scatters its own keys. Returns the partition start
+  // offsets.
+  private int[] splitPartitions(Object keys[], Object values[], Object pk[], Object pv[], long ph[]) {
+    int n = keys.length, chunks = (n + CHUNK - 1) / CHUNK;
+    long h[] = new long[n];
+    int count[][] = new int[chunks][];
+    IntStream.range(0, chunks).parallel().forEach(c -> {
+      int cnt[] = count[c] = new int[partitions];
+      for (int i = c * CHUNK, end = Math.min(n, i + CHUNK); i < end; ++i)
+        ++cnt[partition(h[i] = hash(keys[i]))];
+    });
+    int start[] = new int[partitions + 1];
+    for (int p = 0, total = 0; p < partitions; ++p) {
+      start[p] = total;
+      for (int c = 0; c < chunks; ++c) {
+        int k = count[c][p];
+        count[c][p] = total;
+        total += k;
+      }
+    }
+    start[partitions] = n;
+    IntStream.range(0, chunks).parallel().forEach(c -> {
+      int next[] = count[c];
+      for (int i = c * CHUNK, end = Math.min(n, i + CHUNK); i < end; ++i) {
+        int at = next[partition(h[i])]++;
+        pk[at] = keys[i];
+        pv[at] = values[i];
+        ph[at] = h[i];
+      }
+    });
+    return start;
+  }
+
+  // Places the keys of partition p and returns how many of them were
+  // duplicates. Buckets are placed largest first, while most slots are
+  // still free, and each takes the first pilot that sends all its keys to
+  // distinct free slots. Keys with equal hashes share a bucket, so they are
+  // weeded out per bucket beforehand. The search runs over a copy of the
+  // partition's hashes grouped by bucket, which stays in cache.
+  private int buildPartition(int p, Object keys[], Object values[], long h[], boolean duplicate[]) {
+    int from = meta[p * META + SLOT_START], n = meta[p * META + SLOTS];
+    int b0 = meta[p * META + BUCKET_START], nb = meta[p * META + BUCKETS];
+    // bucket b holds the indexes of its keys, and their hashes, from first[b]
+    // to first[b + 1]
+    int first[] = new int[nb + 1], members[] = new int[n];
+    long hashes[] = new long[n];
+    for (int j = 0; j < n; ++j)
+      ++first[bucket(h[from + j], nb) + 1];
+    int largest = 0;
+    for (int b = 0; b < nb; ++b) {
+      largest = Math.max(largest, first[b + 1]);
+      first[b + 1] += first[b];
+    }
+    int fill[] = first.clone();
+    for (int i = from; i < from + n; ++i) {
+      int at = fill[bucket(h[i], nb)]++;
+      members[at] = i;
+      hashes[at] = h[i];
+    }
+    // keeps the first key of every hash in place and moves each bucket's
+    // other keys to its end, counting them
+    int dups = 0, kept[] = new int[nb];
+    for (int b = 0; b < nb; ++b) {
+      int lo = first[b], end = first[b + 1], k = lo;
+      for (int x = lo; x < end; ++x) {
+        int y = lo;
+        while (y < k && hashes[y] != hashes[x])
+          ++y;
+        if (y < k) {
+          duplicate[members[x]] = true;
+          ++dups;
+        } else {
+          long hx = hashes[x];
+          int mx = members[x];
+          hashes[x] = hashes[k];
+          members[x] = members[k];
+          hashes[k] = hx;
+          members[k++] = mx;
+        }
+      }
+      kept[b] = k - lo;
+    }
+    int m = n - dups;
+    meta[p * META + SLOTS] = m;
+    // buckets by decreasing size, again a counting sort
+    int bySize[] = new int[largest + 2];
+    for (int b = 0; b < nb; ++b)
+      ++bySize[largest - kept[b] + 1];
+    for (int s = 0; s <= largest; ++s)
+      bySize[s + 1] += bySize[s];
+    int sorted[] = new int[nb];
+    for (int b = 0; b < nb; ++b)
+      sorted[bySize[largest - kept[b]]++] = b;
+    // placed[j] is the slot of the key at members[j]
+    int table = meta[p * META + TABLE] = m + extra(m), placed[] = new int[n];
+    long taken[] = new long[(table + 63) >>> 6];
+    int pos[] = new int[largest];
+    for (int b : sorted) {
+      int lo = first[b], cnt = kept[b];
+      if (cnt == 0)
+        break;
+      int trial = findPilot(hashes, lo, cnt, table, taken, pos);
+      pilots[b0 + b] = (char) trial;
+      for (int j = 0; j < cnt; ++j) {
+        taken[pos[j] >>> 6] |= 1L << pos[j];
+        placed[lo + j] = pos[j];
+      }
+    }
+    // the slots taken past m pair up in order with the free ones below it
+    int r0 = meta[p * META + REMAP_START];
+    for (int s = m, free = 0; s < table; ++s) {
+      if ((taken[s >>> 6] & (1L << s)) != 0) {
+        while ((taken[free >>> 6] & (1L << free)) != 0)
+          ++free;
+        remap[r0 + s - m] = free++;
+      }
+    }
+    for (int b = 0; b < nb; ++b) {
+      for (int x = first[b], end = x + kept[b]; x < end; ++x) {
+        int i = members[x], at = placed[x];
+        at = (from + ((at < m) ? at : remap[r0 + at - m])) << 1;
+        slots[at] = keys[i];
+        slots[at + 1] = values[i];
+      }
+    }
+    return dups;
+  }
+
+  // the first trial whose pilot sends the cnt hashes from hashes[lo] to
+  // distinct free slots, which are left in pos
+  private int findPilot(long hashes[], int lo, int cnt, int table, long taken[], int pos[]) {
+    for (int t = 0; t < MAX_PILOT; ++t) {
+      long pilot = pilot(t);
+      int j = 0;
+      for (; j < cnt; ++j) {
+        int s = slot(hashes[lo + j], pilot, table);
+        if ((taken[s >>> 6] & (1L << s)) != 0)
+          break;
+        int q = 0;
+        while (q < j && pos[q] != s)
+          ++q;
+        if (q < j)
+          break;
+        pos[j] = s;
+      }
+      if (j == cnt)
+        return t;
+    }
+    throw new NoPilotException();
+  }
+
+  // the slot of a key of hash h, whether it is there or not, or -1 when its
+  // partition is empty
+  final int slotOf(long h) {
+    int at = partition(h) * META, m = meta[at + SLOTS];
+    if (m == 0)
+      return -1;
+    int s = slot(h, pilot(pilots[meta[at + BUCKET_START] + bucket(h, meta[at + BUCKETS])]), meta[at + TABLE]);
+    return meta[at + SLOT_START] + ((s < m) ? s : remap[meta[at + REMAP_START] + s - m]);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public V get(K k) {
+    return getOrDefault(k, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  public V getOrDefault(K k, V defaultValue) {
+    int s = slotOf(hash(k));
+    if (s >= 0) {
+      Object x = slots[s << 1];
+      if (x == k || (k != null && k.equals(x)))
+        return (V) slots[(s << 1) + 1];
+    }
+    return (overflow == null) ? defaultValue : overflow.getOrDefault(k, defaultValue);
+  }
+
+  public boolean containsKey(K k) {
+    int s = slotOf(hash(k));
+    if (s >= 0) {
+      Object x = slots[s << 1];
+      if (x == k || (k != null && k.equals(x)))
+        return true;
+    }
+    return overflow != null && overflow.containsKey(k);
+  }
+
+  // Calls action for every mapping, partition by partition in slot order.
+  @SuppressWarnings("unchecked")
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    Objects.requireNonNull(action);
+    for (int p = 0; p < partitions * META; p += META)
+      for (int at = meta[p + SLOT_START] << 1, end = at + (meta[p + SLOTS] << 1); at < end; at += 2)
+        action.accept((K) slots[at], (V) slots[at + 1]);
+    if (overflow != null)
+      overflow.forEach(action);
+  }
+
+  // a mutable copy
+  public MyHashMap<K, V> thaw() {
+    MyHashMap<K, V> m = new MyHashMap<>(Math.max(size, 1));
+    forEach(m::put);
+    return m;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder("{");
+    forEach((k, v) -> {
+      if (b.length() > 1)
+        b.append(", ");
+      b.append(k).append('=').append(v);
+    });
+    return b.append('}').toString();
+  }
+
+}
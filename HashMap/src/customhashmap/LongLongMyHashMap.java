@@ -0,0 +1,269 @@
+package customhashmap;
+
+import java.util.Arrays;
+
+// Open addressing long -> long map. Keys and values live in parallel primitive
+// arrays, so counting with addTo() neither boxes nor allocates per entry.
+public class LongLongMyHashMap {
+
+  int size, threshold, mask;
+  static final int DEFAULT_INITIAL_CAPACITY = 16, MAXIMUM_CAPACITY = 1 << 30;
+  static final float DEFAULT_LOAD_FACTOR = 0.5f;
+  // keys getAll() takes through each of its stages at once
+  static final int GET_ALL_GROUP = 16;
+  // 0 marks an empty slot, the real key 0 is kept on the side
+  static final long FREE_KEY = 0;
+  float loadFactor;
+  long keys[], values[];
+  boolean hasFreeKey;
+  long freeValue;
+
+  public LongLongMyHashMap(int iniCap, float loadFactor) {
+    if (iniCap <= 0) {
+      throw new IllegalArgumentException("initial capacity should be greater than 0");
+    }
+    if (loadFactor <= 0 || loadFactor >= 1) {
+      throw new IllegalArgumentException("Illegal load factor");
+    }
+    this.loadFactor = loadFactor;
+    int cap = MyHashMap.tableSizeFor((int) Math.min(MAXIMUM_CAPACITY, Math.ceil(iniCap / loadFactor)));
+    allocate(Math.max(cap, 2));
+  }
+
+  public LongLongMyHashMap(int iniCap) {
+    this(iniCap, DEFAULT_LOAD_FACTOR);
+  }
+
+  public LongLongMyHashMap() {
+    this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+  }
+
+  static final int hash(long k) {
+    long h = k * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 32;
+    return (int) (h ^ (h >>> 16));
+  }
+
+  private void allocate(int cap) {
+    keys = new long[cap];
+    values = new long[cap];
+    mask = cap - 1;
+    threshold = (cap >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY - 1 : (int) (cap * loadFactor);
+  }
+
+  public final int size() {
+    return size;
+  }
+
+  public final boolean isEmpty() {
+    return size == 0;
+  }
+
+  // slot holding k, or -(insertion slot + 1) when k is absent
+  private int find(long k) {
+    long tab[] = keys, key;
+    int m = mask, i = hash(k) & m;
+    while ((key = tab[i]) != FREE_KEY) {
+      if (key == k)
+        return i;
+      i = (i + 1) & m;
+    }
+    return -(i + 1);
+  }
+
+  public long getOrDefault(long k, long def) {
+    if (k == FREE_KEY)
+      return hasFreeKey ? freeValue : def;
+    long tab[] = keys, key;
+    int m = mask, i = hash(k) & m;
+    while ((key = tab[i]) != FREE_KEY) {
+      if (key == k)
+        return values[i];
+      i = (i + 1) & m;
+    }
+    return def;
+  }
+
+  public long get(long k) {
+    return getOrDefault(k, 0);
+  }
+
+  // Looks up every ks[j] into out[j], def where absent, GET_ALL_GROUP keys at
+  // a time: hash the whole group, read every home slot, then finish the
+  // probes and read the values. The home slot reads do not depend on each
+  // other, so their misses overlap. A probe here is a single load with
+  // nothing hanging off it, which the CPU already runs ahead on in a loop of
+  // get() calls, so the gain is far smaller than MyHashMap.getAll()'s; see
+  // benchmark.GetAllBenchmark.
+  public void getAll(long ks[], long out[], long def) {
+    if (out.length < ks.length) {
+      throw new IllegalArgumentException("out is shorter than keys");
+    }
+    long tab[] = keys, vals[] = values, home[] = new long[GET_ALL_GROUP];
+    int m = mask, at[] = new int[GET_ALL_GROUP];
+    for (int base = 0; base < ks.length; base += GET_ALL_GROUP) {
+      int n = Math.min(GET_ALL_GROUP, ks.length - base);
+      for (int j = 0; j < n; ++j)
+        at[j] = hash(ks[base + j]) & m;
+      for (int j = 0; j < n; ++j)
+        home[j] = tab[at[j]];
+      for (int j = 0; j < n; ++j) {
+        long k = ks[base + j], key = home[j];
+        int i = at[j];
+        if (k == FREE_KEY) {
+          out[base + j] = hasFreeKey ? freeValue : def;
+          continue;
+        }
+        while (key != k) {
+          if (key == FREE_KEY)
+            break;
+          key = tab[i = (i + 1) & m];
+        }
+        out[base + j] = (key == k) ? vals[i] : def;
+      }
+    }
+  }
+
+  public boolean containsKey(long k) {
+    return (k == FREE_KEY) ? hasFreeKey : find(k) >= 0;
+  }
+
+  // returns the previous value, or 0 if k was absent
+  public long put(long k, long v) {
+    if (k == FREE_KEY) {
+      long old = freeValue;
+      if (!hasFreeKey) {
+        hasFreeKey = true;
+        ++size;
+      }
+      freeValue = v;
+      return old;
+    }
+    int i = find(k);
+    if (i >= 0) {
+      long old = values[i];
+      values[i] = v;
+      return old;
+    }
+    insertAt(-i - 1, k, v);
+    return 0;
+  }
+
+  // adds delta to the value of k (0 when absent) and returns the previous value
+  public long addTo(long k, long delta) {
+    if (k == FREE_KEY) {
+      long old = freeValue;
+      if (!hasFreeKey) {
+        hasFreeKey = true;
+        ++size;
+      }
+      freeValue = old + delta;
+      return old;
+    }
+    int i = find(k);
+    if (i >= 0) {
+      long old = values[i];
+      values[i] = old + delta;
+      return old;
+    }
+    insertAt(-i - 1, k, delta);
+    return 0;
+  }
+
+  private void insertAt(int i, long k, long v) {
+    keys[i] = k;
+    values[i] = v;
+    if (++size > threshold)
+      resize();
+  }
+
+  // returns the removed value, or 0 if k was absent
+  public long remove(long k) {
+    if (k == FREE_KEY) {
+      if (!hasFreeKey)
+        return 0;
+      long old = freeValue;
+      hasFreeKey = false;
+      freeValue = 0;
+      --size;
+      return old;
+    }
+    int i = find(k);
+    if (i < 0)
+      return 0;
+    long old = values[i];
+    shiftKeys(i);
+    --size;
+    return old;
+  }
+
+  // backward shift deletion, keeps probe sequences intact without tombstones
+  private void shiftKeys(int pos) {
+    long tab[] = keys, vals[] = values, key;
+    int m = mask, last, slot;
+    for (;;) {
+      pos = ((last = pos) + 1) & m;
+      for (;;) {
+        if ((key = tab[pos]) == FREE_KEY) {
+          tab[last] = FREE_KEY;
+          vals[last] = 0;
+          return;
+        }
+        slot = hash(key) & m;
+        if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos))
+          break;
+        pos = (pos + 1) & m;
+      }
+      tab[last] = key;
+      vals[last] = vals[pos];
+    }
+  }
+
+  void resize() {
+    long oldKeys[] = keys, oldValues[] = values;
+    int oldCap = oldKeys.length;
+    if (oldCap >= MAXIMUM_CAPACITY) {
+      if (size >= MAXIMUM_CAPACITY - 1)
+        throw new IllegalStateException("map is full");
+      threshold = MAXIMUM_CAPACITY - 1;
+      return;
+    }
+    allocate(oldCap << 1);
+    long tab[] = keys, vals[] = values;
+    int m = mask;
+    for (int j = 0; j < oldCap; ++j) {
+      long key;
+      if ((key = oldKeys[j]) != FREE_KEY) {
+        int i = hash(key) & m;
+        while (tab[i] != FREE_KEY)
+          i = (i + 1) & m;
+        tab[i] = key;
+        vals[i] = oldValues[j];
+      }
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(keys, FREE_KEY);
+    Arrays.fill(values, 0);
+    hasFreeKey = false;
+    freeValue = 0;
+    size = 0;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder res = new StringBuilder("{");
+    if (hasFreeKey)
+      res.append(FREE_KEY).append('=').append(freeValue).append(", ");
+    long tab[] = keys;
+    for (int i = 0; i < tab.length; i++) {
+      if (tab[i] != FREE_KEY)
+        res.append(tab[i]).append('=').append(values[i]).append(", ");
+    }
+    if (res.length() > 1)
+      res.setLength(res.length() - 2);
+    return res.append('}').toString();
+  }
+
+}
@@ -0,0 +1,179 @@
+package customhashmap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// OffHeapMyHashMap whose slot pages are regions of a memory-mapped file, so
+// the table survives a restart and reopening it is just mapping it again.
+// The file is [4 KiB header][slot pages]. The capacity is fixed when the file
+// is created, a put past it fails with IllegalStateException.
+//
+// force() is the checkpoint: it flushes the slots, then writes a header with
+// the size, a CLEAN state and a CRC32. The first write after a checkpoint
+// flips the header to DIRTY on disk before any slot changes, so a file left
+// behind by a crash, or with a torn header, is refused on open.
+public class MappedMyHashMap extends OffHeapMyHashMap {
+
+  static final long MAGIC = 0x4d79484d4d617031L; // "MyHMMap1"
+  static final int VERSION = 1, HEADER_BYTES = 4096;
+  static final int STATE_CLEAN = 1, STATE_DIRTY = 2;
+  // header layout
+  static final int MAGIC_AT = 0, VERSION_AT = 8, KEY_SIZE_AT = 12, VALUE_SIZE_AT = 16, CAPACITY_AT = 20,
+      SIZE_AT = 24, LOAD_FACTOR_AT = 28, STATE_AT = 32, GENERATION_AT = 36, CRC_AT = 44;
+
+  final FileChannel channel;
+  final MappedByteBuffer header;
+  long pageBytes, generation;
+  boolean dirty;
+
+  // creates a new file sized for maxEntries, failing if the path exists
+  public MappedMyHashMap(Path path, int keySize, int valueSize, int maxEntries, float loadFactor) throws IOException {
+    super(keySize, valueSize, loadFactor);
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("max entries should be greater than 0");
+    }
+    this.pageBytes = (long) slotSize << pageShift;
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+      this.pages = allocate(tableSizeFor(maxEntries, loadFactor));
+      header.putLong(MAGIC_AT, MAGIC);
+      header.putInt(VERSION_AT, VERSION);
+      header.putInt(KEY_SIZE_AT, keySize);
+      header.putInt(VALUE_SIZE_AT, valueSize);
+      header.putInt(CAPACITY_AT, capacity);
+      header.putFloat(LOAD_FACTOR_AT, loadFactor);
+      this.dirty = true;
+      force();
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public MappedMyHashMap(Path path, int keySize, int valueSize, int maxEntries) throws IOException {
+    this(path, keySize, valueSize, maxEntries, DEFAULT_LOAD_FACTOR);
+  }
+
+  // reopens a file written by this class, nothing is rehashed
+  public MappedMyHashMap(Path path) throws IOException {
+    this(FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+  }
+
+  private MappedMyHashMap(FileChannel channel) throws IOException {
+    this(channel, readHeader(channel));
+  }
+
+  private MappedMyHashMap(FileChannel channel, MappedByteBuffer header) throws IOException {
+    super(header.getInt(KEY_SIZE_AT), header.getInt(VALUE_SIZE_AT), header.getFloat(LOAD_FACTOR_AT));
+    this.channel = channel;
+    this.header = header;
+    this.pageBytes = (long) slotSize << pageShift;
+    try {
+      int cap = header.getInt(CAPACITY_AT);
+      if (cap < 2 || (cap & (cap - 1)) != 0 || channel.size() < HEADER_BYTES + (long) cap * slotSize)
+        throw new IOException("map file is truncated");
+      this.pages = allocate(cap);
+      this.size = header.getInt(SIZE_AT);
+      this.generation = header.getLong(GENERATION_AT);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static MappedByteBuffer readHeader(FileChannel channel) throws IOException {
+    try {
+      if (channel.size() < HEADER_BYTES)
+        throw new IOException("not a MyHashMap file");
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+      if (header.getLong(MAGIC_AT) != MAGIC || header.getInt(VERSION_AT) != VERSION)
+        throw new IOException("not a MyHashMap file");
+      if (header.getInt(CRC_AT) != checksum(header))
+        throw new IOException("map file header is corrupt");
+      if (header.getInt(STATE_AT) != STATE_CLEAN)
+        throw new IOException("map file was not closed cleanly, refusing to open it");
+      // checked here, before super() would refuse them with the channel open
+      int keySize = header.getInt(KEY_SIZE_AT), valueSize = header.getInt(VALUE_SIZE_AT);
+      float loadFactor = header.getFloat(LOAD_FACTOR_AT);
+      if (keySize <= 0 || valueSize < 0 || (long) HASH_BYTES + keySize + valueSize > MAX_PAGE_BYTES
+          || !(loadFactor > 0 && loadFactor < 1))
+        throw new IOException("map file header is corrupt");
+      return header;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  static int checksum(ByteBuffer header) {
+    CRC32 crc = new CRC32();
+    crc.update(header.duplicate().position(0).limit(CRC_AT));
+    return (int) crc.getValue();
+  }
+
+  @Override
+  ByteBuffer allocatePage(int index, int bytes) {
+    try {
+      return channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + index * pageBytes, bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  void beforeWrite() {
+    if (!dirty) {
+      dirty = true;
+      writeHeader(STATE_DIRTY);
+    }
+  }
+
+  @Override
+  void resize() {
+    throw new IllegalStateException("map file is full, create it with more entries");
+  }
+
+  private void writeHeader(int state) {
+    header.putInt(SIZE_AT, size);
+    header.putInt(STATE_AT, state);
+    header.putLong(GENERATION_AT, generation);
+    header.putInt(CRC_AT, checksum(header));
+    header.force();
+  }
+
+  // checkpoint: slots first, then a clean header that vouches for them
+  public void force() {
+    if (pages == null)
+      throw new IllegalStateException("map is closed");
+    if (!dirty)
+      return;
+    for (ByteBuffer p : pages)
+      ((MappedByteBuffer) p).force();
+    ++generation;
+    writeHeader(STATE_CLEAN);
+    dirty = false;
+  }
+
+  @Override
+  public void close() {
+    if (pages == null)
+      return;
+    force();
+    super.close();
+    freeBuffer(header);
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
@@ -1,15 +1,78 @@
 package customhashmap;
 
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongBinaryOperator;
+import java.util.function.ToLongFunction;
+
 public class MyHashMap<K, V> {
 
-  int size, threshold;
+  int size, threshold, treeifyThreshold, untreeifyThreshold;
   static final int DEFAULT_INITIAL_CAPACITY = 1 << 16, MAXIMUM_CAPACITY = 1 << 30;
+  // a bucket longer than the treeify threshold becomes a red-black tree, unless
+  // the table is still small enough that resizing is the better fix
+  static final int TREEIFY_THRESHOLD = 8, MIN_TREEIFY_CAPACITY = 64;
+  // buckets moved from prevTable to table by every put/get while an
+  // incremental resize is in progress
+  static final int RESIZE_STEP = 8;
+  // a map created without a larger capacity holds up to SMALL_MAX entries in
+  // a packed array before it builds a hashed table
+  static final int SMALL_MAX = 8;
+  // keys getAll() takes through each of its stages at once
+  static final int GET_ALL_GROUP = 32;
   static final float DEFAULT_LOAD_FACTOR = 0.75f;
   float loadFactor;
   Entry<K, V> table[];
+  // with incremental resize on, the table being drained into table, or null
+  Entry<K, V> prevTable[];
+  int transferIndex;
+  boolean incrementalResize;
+  // While an adaptive map has no table, its entries are packed into small as
+  // key, value pairs in insertion order, with their hashes in smallHashes,
+  // and found by a linear scan. The table is built when a put outgrows
+  // SMALL_MAX and dropped again when removals bring size down to half that,
+  // so an empty map holds no arrays at all.
+  Object small[];
+  int smallHashes[];
+  boolean adaptive;
+  // set for Engine.SWISS, which then holds every mapping instead of table
+  final SwissTable<K, V> swiss;
+  // null unless stats are enabled, every hook is behind a null check
+  MyHashMapStats stats;
+  // key of SeededHash, 0 while seeded hashing is off
+  long seed;
+  boolean strongHash;
+  // views, created on first use
+  Set<K> keySet;
+  Collection<V> values;
+  Set<Map.Entry<K, V>> entrySet;
+
+  // How the mappings are stored. CHAINED buckets entries in linked lists,
+  // treeified when they grow long. SWISS keeps keys and values inline in
+  // flat arrays probed a 16-slot group at a time, which suits lookup-heavy
+  // use. The treeify threshold and incremental resize only apply to CHAINED.
+  public enum Engine {
+    CHAINED, SWISS
+  }
 
-  class Entry<K, V> {
-    final int hash;
+  class Entry<K, V> implements Map.Entry<K, V> {
+    // only rewritten when seeded hashing turns strong
+    int hash;
     final K key;
     V value;
     Entry<K, V> next;
@@ -34,33 +97,369 @@ public class MyHashMap<K, V> {
     }
 
     public final int hashCode() {
-      return key.hashCode() ^ value.hashCode();
+      return Objects.hashCode(key) ^ Objects.hashCode(value);
     }
 
+    // Goes through put(), like ViewEntry, so the hooks of a subclass such as
+    // CacheMyHashMap or ExpiringMyHashMap see the write. An entry removed
+    // from the map only has its value set. The raw call is because this
+    // class's K and V shadow the map's.
+    @SuppressWarnings("unchecked")
     public final V setValue(V v) {
       V oldValue = value;
-      value = v;
+      if ((Object) getEntry(hash, key) == this)
+        ((MyHashMap) MyHashMap.this).put(key, v);
+      else
+        value = v;
       return oldValue;
-
     }
 
-    public final boolean equals(Entry<?, ?> o) {
+    public final boolean equals(Object o) {
       if (o == this)
         return true;
-      return (o instanceof MyHashMap<?, ?>.Entry<?, ?>) &&
-          (o.getKey() == key) && (o.getValue() == value);
+      return (o instanceof Map.Entry<?, ?>) &&
+          Objects.equals(((Map.Entry<?, ?>) o).getKey(), key) &&
+          Objects.equals(((Map.Entry<?, ?>) o).getValue(), value);
     }
   }
 
-  public MyHashMap(int iniCap, float loadFactor) {
+  // Head of a treeified bucket. The entries stay linked through next, starting
+  // at this.next, and the tree nodes index them ordered by hash, then by
+  // compareTo() for mutually comparable keys. Lookups in a bucket are
+  // O(log n) as long as colliding keys are Comparable.
+  class TreeBin<K, V> extends Entry<K, V> {
+    TreeNode<K, V> root, first;
+    int count;
+
+    TreeBin(Entry<K, V> head) {
+      super(null, null, 0, null);
+      for (Entry<K, V> e = head, next; e != null; e = next) {
+        next = e.next;
+        insert(e, null, 0);
+      }
+    }
+
+    final Entry<K, V> find(int h, Object k) {
+      TreeNode<K, V> p;
+      return (root != null && (p = findNode(root, h, k, null)) != null) ? p.entry : null;
+    }
+
+    final TreeNode<K, V> findNode(TreeNode<K, V> p, int h, Object k, Class<?> kc) {
+      do {
+        int ph, dir;
+        K pk;
+        TreeNode<K, V> pl = p.left, pr = p.right, q;
+        if ((ph = p.entry.hash) > h)
+          p = pl;
+        else if (ph < h)
+          p = pr;
+        else if ((pk = p.entry.key) == k || (k != null && k.equals(pk)))
+          return p;
+        else if (pl == null)
+          p = pr;
+        else if (pr == null)
+          p = pl;
+        else if ((kc != null || (kc = comparableClassFor(k)) != null) &&
+            (dir = compareComparables(kc, k, pk)) != 0)
+          p = (dir < 0) ? pl : pr;
+        else if ((q = findNode(pr, h, k, kc)) != null)
+          return q;
+        else
+          p = pl;
+      } while (p != null);
+      return null;
+    }
+
+    // returns the existing entry for k, or inserts a new one and returns null
+    @SuppressWarnings("unchecked")
+    final Entry<K, V> putTreeVal(int h, K k, V v) {
+      Class<?> kc = null;
+      boolean searched = false;
+      TreeNode<K, V> p = root, parent = null;
+      int dir = 0;
+      while (p != null) {
+        int ph;
+        K pk;
+        parent = p;
+        if ((ph = p.entry.hash) > h)
+          dir = -1;
+        else if (ph < h)
+          dir = 1;
+        else if ((pk = p.entry.key) == k || (k != null && k.equals(pk)))
+          return p.entry;
+        else if ((kc == null && (kc = comparableClassFor(k)) == null) ||
+            (dir = compareComparables(kc, k, pk)) == 0) {
+          if (!searched) {
+            TreeNode<K, V> q;
+            searched = true;
+            if ((p.left != null && (q = findNode(p.left, h, k, kc)) != null) ||
+                (p.right != null && (q = findNode(p.right, h, k, kc)) != null))
+              return q.entry;
+          }
+          dir = tieBreakOrder(k, pk);
+        }
+        p = (dir <= 0) ? p.left : p.right;
+      }
+      // raw call, this class's K and V shadow the map's
+      insert(((MyHashMap) MyHashMap.this).newEntry(k, v, h, null), parent, dir);
+      return null;
+    }
+
+    // links e at the front of the bucket and into the tree, below parent when
+    // the caller already walked the tree, otherwise from the root
+    final void insert(Entry<K, V> e, TreeNode<K, V> parent, int dir) {
+      TreeNode<K, V> x = new TreeNode<K, V>(e);
+      e.next = next;
+      next = e;
+      if ((x.next = first) != null)
+        first.prev = x;
+      first = x;
+      ++count;
+      if (parent == null && root != null) {
+        int h = e.hash;
+        K k = e.key;
+        Class<?> kc = comparableClassFor(k);
+        for (TreeNode<K, V> p = root;;) {
+          int ph;
+          parent = p;
+          if ((ph = p.entry.hash) > h)
+            dir = -1;
+          else if (ph < h)
+            dir = 1;
+          else if (kc == null || (dir = compareComparables(kc, k, p.entry.key)) == 0)
+            dir = tieBreakOrder(k, p.entry.key);
+          if ((p = (dir <= 0) ? p.left : p.right) == null)
+            break;
+        }
+      }
+      if ((x.parent = parent) == null) {
+        root = x;
+      } else if (dir <= 0) {
+        parent.left = x;
+      } else {
+        parent.right = x;
+      }
+      x.red = true;
+      balanceInsertion(x);
+    }
+
+    // unlinks the entry for k from the bucket and the tree, returns it or null
+    final Entry<K, V> remove(int h, Object k) {
+      TreeNode<K, V> z;
+      if (root == null || (z = findNode(root, h, k, null)) == null)
+        return null;
+      Entry<K, V> e = z.entry;
+      if (z.prev == null) {
+        next = e.next;
+        first = z.next;
+      } else {
+        z.prev.entry.next = e.next;
+        z.prev.next = z.next;
+      }
+      if (z.next != null)
+        z.next.prev = z.prev;
+      --count;
+      deleteNode(z);
+      return e;
+    }
+
+    private void deleteNode(TreeNode<K, V> z) {
+      TreeNode<K, V> y = z, x, xParent;
+      boolean yRed = y.red;
+      if (z.left == null) {
+        x = z.right;
+        xParent = z.parent;
+        transplant(z, z.right);
+      } else if (z.right == null) {
+        x = z.left;
+        xParent = z.parent;
+        transplant(z, z.left);
+      } else {
+        y = z.right;
+        while (y.left != null)
+          y = y.left;
+        yRed = y.red;
+        x = y.right;
+        if (y.parent == z) {
+          xParent = y;
+        } else {
+          xParent = y.parent;
+          transplant(y, y.right);
+          y.right = z.right;
+          y.right.parent = y;
+        }
+        transplant(z, y);
+        y.left = z.left;
+        y.left.parent = y;
+        y.red = z.red;
+      }
+      if (!yRed)
+        balanceDeletion(x, xParent);
+    }
+
+    private void transplant(TreeNode<K, V> u, TreeNode<K, V> v) {
+      if (u.parent == null)
+        root = v;
+      else if (u == u.parent.left)
+        u.parent.left = v;
+      else
+        u.parent.right = v;
+      if (v != null)
+        v.parent = u.parent;
+    }
+
+    private void rotateLeft(TreeNode<K, V> p) {
+      TreeNode<K, V> r = p.right;
+      if ((p.right = r.left) != null)
+        r.left.parent = p;
+      transplant(p, r);
+      r.left = p;
+      p.parent = r;
+    }
+
+    private void rotateRight(TreeNode<K, V> p) {
+      TreeNode<K, V> l = p.left;
+      if ((p.left = l.right) != null)
+        l.right.parent = p;
+      transplant(p, l);
+      l.right = p;
+      p.parent = l;
+    }
+
+    private void balanceInsertion(TreeNode<K, V> x) {
+      TreeNode<K, V> xp, xpp, y;
+      while ((xp = x.parent) != null && xp.red) {
+        xpp = xp.parent;
+        if (xp == xpp.left) {
+          if ((y = xpp.right) != null && y.red) {
+            xp.red = y.red = false;
+            xpp.red = true;
+            x = xpp;
+          } else {
+            if (x == xp.right) {
+              rotateLeft(x = xp);
+              xp = x.parent;
+            }
+            xp.red = false;
+            xpp.red = true;
+            rotateRight(xpp);
+          }
+        } else {
+          if ((y = xpp.left) != null && y.red) {
+            xp.red = y.red = false;
+            xpp.red = true;
+            x = xpp;
+          } else {
+            if (x == xp.left) {
+              rotateRight(x = xp);
+              xp = x.parent;
+            }
+            xp.red = false;
+            xpp.red = true;
+            rotateLeft(xpp);
+          }
+        }
+      }
+      root.red = false;
+    }
+
+    private void balanceDeletion(TreeNode<K, V> x, TreeNode<K, V> xp) {
+      TreeNode<K, V> w;
+      while (x != root && (x == null || !x.red)) {
+        if (x == xp.left) {
+          if ((w = xp.right).red) {
+            w.red = false;
+            xp.red = true;
+            rotateLeft(xp);
+            w = xp.right;
+          }
+          if ((w.left == null || !w.left.red) && (w.right == null || !w.right.red)) {
+            w.red = true;
+            x = xp;
+            xp = x.parent;
+          } else {
+            if (w.right == null || !w.right.red) {
+              w.left.red = false;
+              w.red = true;
+              rotateRight(w);
+              w = xp.right;
+            }
+            w.red = xp.red;
+            xp.red = false;
+            if (w.right != null)
+              w.right.red = false;
+            rotateLeft(xp);
+            x = root;
+          }
+        } else {
+          if ((w = xp.left).red) {
+            w.red = false;
+            xp.red = true;
+            rotateRight(xp);
+            w = xp.left;
+          }
+          if ((w.left == null || !w.left.red) && (w.right == null || !w.right.red)) {
+            w.red = true;
+            x = xp;
+            xp = x.parent;
+          } else {
+            if (w.left == null || !w.left.red) {
+              w.right.red = false;
+              w.red = true;
+              rotateLeft(w);
+              w = xp.left;
+            }
+            w.red = xp.red;
+            xp.red = false;
+            if (w.left != null)
+              w.left.red = false;
+            rotateRight(xp);
+            x = root;
+          }
+        }
+      }
+      if (x != null)
+        x.red = false;
+    }
+  }
+
+  class TreeNode<K, V> {
+    final Entry<K, V> entry;
+    TreeNode<K, V> parent, left, right, prev, next;
+    boolean red;
+
+    TreeNode(Entry<K, V> entry) {
+      this.entry = entry;
+    }
+  }
+
+  public MyHashMap(int iniCap, float loadFactor, int treeifyThreshold) {
+    this(iniCap, loadFactor, treeifyThreshold, Engine.CHAINED);
+  }
+
+  public MyHashMap(int iniCap, float loadFactor, Engine engine) {
+    this(iniCap, loadFactor, TREEIFY_THRESHOLD, engine);
+  }
+
+  MyHashMap(int iniCap, float loadFactor, int treeifyThreshold, Engine engine) {
     if (iniCap <= 0) {
       throw new IllegalArgumentException("initial capacity should be greater than 0");
     }
     if (loadFactor <= 0) {
       throw new IllegalArgumentException("Illegal load factor");
     }
+    if (treeifyThreshold < 2) {
+      throw new IllegalArgumentException("treeify threshold should be at least 2");
+    }
     this.loadFactor = loadFactor;
     this.threshold = MyHashMap.tableSizeFor(iniCap);
+    this.swiss = (engine == Engine.SWISS) ? new SwissTable<K, V>(iniCap, loadFactor) : null;
+    this.adaptive = swiss == null && iniCap <= SMALL_MAX;
+    setTreeifyThreshold(treeifyThreshold);
+  }
+
+  public MyHashMap(int iniCap, float loadFactor) {
+    this(iniCap, loadFactor, TREEIFY_THRESHOLD);
   }
 
   public MyHashMap(int iniCap) {
@@ -69,6 +468,130 @@ public class MyHashMap<K, V> {
 
   public MyHashMap() {
     this.loadFactor = DEFAULT_LOAD_FACTOR;
+    this.swiss = null;
+    this.adaptive = true;
+    setTreeifyThreshold(TREEIFY_THRESHOLD);
+  }
+
+  public Engine engine() {
+    return (swiss == null) ? Engine.CHAINED : Engine.SWISS;
+  }
+
+  // Starts counting hits, misses and resizes, or stops and drops the counts.
+  // While disabled the map pays a null check per get and resize.
+  public void setStatsEnabled(boolean enabled) {
+    if (enabled == (stats != null))
+      return;
+    stats = enabled ? new MyHashMapStats(this) : null;
+    if (swiss != null)
+      swiss.stats = stats;
+  }
+
+  // the live statistics, or null when they are disabled
+  public MyHashMapStats stats() {
+    return stats;
+  }
+
+  final int capacity() {
+    Entry<K, V> tab[];
+    if (swiss != null)
+      return swiss.ctrl.length;
+    if ((tab = table) != null)
+      return tab.length;
+    return (smallHashes == null) ? 0 : smallHashes.length;
+  }
+
+  // fills hist with the chain lengths, see MyHashMapStatsMXBean, and returns
+  // the longest
+  final int chainHistogram(long hist[]) {
+    if (swiss != null)
+      return swiss.probeHistogram(hist);
+    if (isSmall()) {
+      hist[Math.min(size, hist.length - 1)]++;
+      return size;
+    }
+    Entry<K, V> tab[] = table, old[] = prevTable;
+    if (tab == null)
+      return 0;
+    int max = 0;
+    if (old == null) {
+      for (Entry<K, V> e : tab)
+        max = Math.max(max, chainLength(e, hist));
+      return max;
+    }
+    // Mid resize, an old bucket that is still non-null holds all the keys
+    // of its two new buckets, which are counted through it. Every other old
+    // bucket, moved or empty, is a null slot there and is left out.
+    int oldMask = old.length - 1;
+    for (int j = 0; j < tab.length; ++j) {
+      Entry<K, V> e = old[j & oldMask];
+      if (e == null)
+        max = Math.max(max, chainLength(tab[j], hist));
+      else if (j <= oldMask)
+        max = Math.max(max, chainLength(e, hist));
+    }
+    return max;
+  }
+
+  // counts the bucket starting at e in hist and returns its length
+  private int chainLength(Entry<K, V> e, long hist[]) {
+    int n = 0;
+    if (e instanceof TreeBin)
+      n = ((TreeBin<K, V>) e).count;
+    else
+      for (; e != null; e = e.next)
+        ++n;
+    hist[Math.min(n, hist.length - 1)]++;
+    return n;
+  }
+
+  private void setTreeifyThreshold(int treeifyThreshold) {
+    this.treeifyThreshold = treeifyThreshold;
+    this.untreeifyThreshold = treeifyThreshold * 3 / 4;
+  }
+
+  // When on, a resize only allocates the doubled table. The old buckets are
+  // then moved a few at a time by later puts and gets, and lookups check the
+  // old table until it is drained, so no single put pays for a full rehash.
+  public void setIncrementalResize(boolean incrementalResize) {
+    if (swiss != null)
+      return;
+    if (!incrementalResize && prevTable != null)
+      finishTransfer();
+    this.incrementalResize = incrementalResize;
+  }
+
+  // Keys this map's hashes with a random seed of its own, see SeededHash,
+  // so keys chosen to collide in hash() no longer do. Only allowed while the
+  // map is empty.
+  public void setSeededHashing(boolean enabled) {
+    // size() and not size, SWISS keeps its own count
+    if (size() > 0) {
+      throw new IllegalStateException("seeded hashing can only be changed while the map is empty");
+    }
+    setSeed(enabled ? SeededHash.newSeed() : 0, false);
+  }
+
+  public boolean isSeededHashing() {
+    return seed != 0;
+  }
+
+  // true once seeded hashing has switched to hashing Strings by their chars
+  final boolean isStrongHash() {
+    return (swiss != null) ? swiss.strongHash : strongHash;
+  }
+
+  final void setSeed(long seed, boolean strongHash) {
+    this.seed = seed;
+    this.strongHash = strongHash;
+    if (swiss != null) {
+      swiss.seed = seed;
+      swiss.strongHash = strongHash;
+    }
+  }
+
+  public boolean isIncrementalResize() {
+    return incrementalResize;
   }
 
   static final int tableSizeFor(int cap) {
@@ -87,15 +610,181 @@ public class MyHashMap<K, V> {
     return (k == null) ? 0 : (h = k.hashCode()) ^ (h >>> 16);
   }
 
+  // the hash stored with k's entry, hash(k) unless seeded hashing is on
+  final int hashOf(Object k) {
+    return (seed == 0) ? hash(k) : SeededHash.hash(k, seed, strongHash);
+  }
+
+  static Class<?> comparableClassFor(Object x) {
+    if (x instanceof Comparable) {
+      Class<?> c;
+      Type[] ts, as;
+      ParameterizedType p;
+      if ((c = x.getClass()) == String.class)
+        return c;
+      if ((ts = c.getGenericInterfaces()) != null) {
+        for (Type t : ts) {
+          if ((t instanceof ParameterizedType) &&
+              ((p = (ParameterizedType) t).getRawType() == Comparable.class) &&
+              (as = p.getActualTypeArguments()) != null && as.length == 1 && as[0] == c)
+            return c;
+        }
+      }
+    }
+    return null;
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  static int compareComparables(Class<?> kc, Object k, Object x) {
+    return (x == null || x.getClass() != kc) ? 0 : ((Comparable) k).compareTo(x);
+  }
+
+  // total order for keys that are equal in hash and not mutually comparable
+  static int tieBreakOrder(Object a, Object b) {
+    int d;
+    if (a == null || b == null || (d = a.getClass().getName().compareTo(b.getClass().getName())) == 0)
+      d = (System.identityHashCode(a) <= System.identityHashCode(b)) ? -1 : 1;
+    return d;
+  }
+
   public final int size() {
-    return size;
+    return (swiss == null) ? size : swiss.size;
   }
 
   public final boolean isEmpty() {
-    return size == 0;
+    return size() == 0;
+  }
+
+  final boolean isSmall() {
+    return table == null && adaptive;
+  }
+
+  // index of k in small, or -1
+  final int smallIndex(int hash, Object k) {
+    int hs[] = smallHashes;
+    Object key;
+    for (int j = 0; j < size; ++j) {
+      if (hs[j] == hash && ((key = small[j << 1]) == k || (k != null && k.equals(key))))
+        return j;
+    }
+    return -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  final V smallValue(int j) {
+    return (V) small[(j << 1) + 1];
+  }
+
+  // appends an absent key, or builds the table first when small is full
+  final void smallAdd(int hash, K k, V v) {
+    int n = size;
+    if (n == SMALL_MAX) {
+      promote();
+      putVal(hash, k, v, false);
+      return;
+    }
+    if (small == null) {
+      small = new Object[4];
+      smallHashes = new int[2];
+    } else if (n == smallHashes.length) {
+      small = Arrays.copyOf(small, n << 2);
+      smallHashes = Arrays.copyOf(smallHashes, n << 1);
+    }
+    smallHashes[n] = hash;
+    small[n << 1] = k;
+    small[(n << 1) + 1] = v;
+    size = n + 1;
+  }
+
+  // Hooks for subclasses keeping their own order over the entries, such as
+  // CacheMyHashMap. Only the CHAINED table calls them, the small packed
+  // array and SWISS keep no Entry objects. newEntry() creates the entry of
+  // every new mapping, afterInsert() runs once it is linked and the table
+  // resized, afterAccess() on a get hit, afterWrite() after a value is
+  // replaced and afterUnlink() after an entry is removed.
+
+  Entry<K, V> newEntry(K k, V v, int hash, Entry<K, V> next) {
+    return new Entry<K, V>(k, v, hash, next);
+  }
+
+  void afterInsert() {
+  }
+
+  void afterAccess(Entry<K, V> e) {
+  }
+
+  void afterWrite(Entry<K, V> e) {
+  }
+
+  void afterUnlink(Entry<K, V> e) {
+  }
+
+  // the last entry takes the place of the removed one
+  final void smallRemove(int j) {
+    int last = --size;
+    smallHashes[j] = smallHashes[last];
+    small[j << 1] = small[last << 1];
+    small[(j << 1) + 1] = small[(last << 1) + 1];
+    small[last << 1] = small[(last << 1) + 1] = null;
+    if (last == 0) {
+      small = null;
+      smallHashes = null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  final void promote() {
+    Object kv[] = small;
+    int hs[] = smallHashes, n = size;
+    small = null;
+    smallHashes = null;
+    size = 0;
+    int t = tableSizeFor((int) Math.min(MAXIMUM_CAPACITY, Math.ceil((SMALL_MAX + 1) / loadFactor)));
+    if (t > threshold)
+      threshold = t;
+    resize();
+    for (int j = 0; j < n; ++j)
+      putVal(hs[j], (K) kv[j << 1], (V) kv[(j << 1) + 1], false);
+  }
+
+  // called after every removal from the table
+  final void afterRemoval(Entry<K, V> e) {
+    afterUnlink(e);
+    if (adaptive && size <= SMALL_MAX / 2)
+      demote();
+  }
+
+  final void demote() {
+    int n = size;
+    if (n > 0) {
+      small = new Object[n << 1];
+      smallHashes = new int[n];
+      packEntries(table, packEntries(prevTable, 0));
+    }
+    table = prevTable = null;
+    threshold = 0;
+  }
+
+  // copies the entries of tab into small from index j on, returns the next index
+  private int packEntries(Entry<K, V> tab[], int j) {
+    if (tab == null)
+      return j;
+    for (Entry<K, V> e : tab) {
+      if (e instanceof TreeBin)
+        e = e.next;
+      for (; e != null; e = e.next, ++j) {
+        smallHashes[j] = e.hash;
+        small[j << 1] = e.key;
+        small[(j << 1) + 1] = e.value;
+      }
+    }
+    return j;
   }
 
   Entry<K, V>[] resize() {
+    long start = (stats == null) ? 0 : System.nanoTime();
+    if (prevTable != null)
+      finishTransfer();
     Entry<K, V> oldTable[] = table;
     int oldCap = (oldTable == null) ? 0 : oldTable.length;
     int oldThr = threshold;
@@ -121,45 +810,205 @@ public class MyHashMap<K, V> {
     }
     threshold = newThr;
 
-    Entry<K, V>[] newTable = (Entry<K, V>[]) new Entry[newCap];
+    @SuppressWarnings("unchecked")
+    Entry<K, V>[] newTable = (Entry<K, V>[]) new MyHashMap<?, ?>.Entry<?, ?>[newCap];
     table = newTable;
     if (oldTable != null) {
       // resizing
-      for (int j = 0; j < oldCap; ++j) {
-        Entry<K, V> e;
-        if ((e = oldTable[j]) != null) {
-          oldTable[j] = null;
-          do {
-            Entry<K, V> next = e.next;
-            int i = e.hash & (newCap - 1);
-            e.next = newTable[i];
-            newTable[i] = e;
-            e = next;
-          } while (e != null);
-        }
+      if (incrementalResize) {
+        prevTable = oldTable;
+        transferIndex = 0;
+      } else {
+        for (int j = 0; j < oldCap; ++j)
+          transferBin(oldTable, j, newTable);
       }
     }
+    if (stats != null)
+      stats.recordResize(System.nanoTime() - start);
 
     return newTable;
   }
 
+  // moves bucket j of oldTable into the doubled newTable, splitting it in two
+  // and rebuilding (or dropping) the tree for each half
+  void transferBin(Entry<K, V>[] oldTable, int j, Entry<K, V>[] newTable) {
+    Entry<K, V> e;
+    if ((e = oldTable[j]) == null)
+      return;
+    oldTable[j] = null;
+    if (e instanceof TreeBin)
+      e = e.next;
+    int oldCap = oldTable.length, loCount = 0, hiCount = 0;
+    Entry<K, V> loHead = null, loTail = null, hiHead = null, hiTail = null;
+    do {
+      Entry<K, V> next = e.next;
+      e.next = null;
+      if ((e.hash & oldCap) == 0) {
+        if (loTail == null)
+          loHead = e;
+        else
+          loTail.next = e;
+        loTail = e;
+        ++loCount;
+      } else {
+        if (hiTail == null)
+          hiHead = e;
+        else
+          hiTail.next = e;
+        hiTail = e;
+        ++hiCount;
+      }
+      e = next;
+    } while (e != null);
+    if (loHead != null)
+      newTable[j] = (loCount > treeifyThreshold) ? new TreeBin<K, V>(loHead) : loHead;
+    if (hiHead != null)
+      newTable[j + oldCap] = (hiCount > treeifyThreshold) ? new TreeBin<K, V>(hiHead) : hiHead;
+  }
+
+  // moves the old bucket for hash, so that it can be updated in table, then
+  // advances the background sweep
+  final void helpTransfer(int hash) {
+    Entry<K, V> oldTab[] = prevTable;
+    transferBin(oldTab, hash & (oldTab.length - 1), table);
+    transferStep();
+  }
+
+  final void transferStep() {
+    Entry<K, V> oldTab[] = prevTable, newTab[] = table;
+    int i = transferIndex, end = Math.min(i + RESIZE_STEP, oldTab.length);
+    for (; i < end; ++i)
+      transferBin(oldTab, i, newTab);
+    if ((transferIndex = i) == oldTab.length)
+      prevTable = null;
+  }
+
+  final void finishTransfer() {
+    Entry<K, V> oldTab[] = prevTable, newTab[] = table;
+    for (int i = transferIndex; i < oldTab.length; ++i)
+      transferBin(oldTab, i, newTab);
+    prevTable = null;
+  }
+
+  void treeifyBin(Entry<K, V>[] tab, int i) {
+    if (tab.length < MIN_TREEIFY_CAPACITY)
+      resize();
+    else if (seed != 0 && !strongHash && holdsString(tab[i]))
+      strengthenHash();
+    else if (!(tab[i] instanceof TreeBin))
+      tab[i] = new TreeBin<K, V>(tab[i]);
+  }
+
+  private static boolean holdsString(MyHashMap<?, ?>.Entry<?, ?> e) {
+    for (; e != null; e = e.next) {
+      if (e.key instanceof String)
+        return true;
+    }
+    return false;
+  }
+
+  // Switches seeded hashing to strong, recomputes every stored hash and
+  // relinks the entries into a table of the same size. A long chain of
+  // Strings on a seeded table, or a new one in a treeified bucket, is a sign
+  // of keys built to share hashCode().
+  final void strengthenHash() {
+    if (prevTable != null)
+      finishTransfer();
+    strongHash = true;
+    @SuppressWarnings("unchecked")
+    Entry<K, V> old[] = table, tab[] = (Entry<K, V>[]) new MyHashMap<?, ?>.Entry<?, ?>[old.length];
+    int n = tab.length, counts[] = new int[n];
+    for (Entry<K, V> e : old) {
+      if (e instanceof TreeBin)
+        e = e.next;
+      for (Entry<K, V> next; e != null; e = next) {
+        next = e.next;
+        int j = (e.hash = hashOf(e.key)) & (n - 1);
+        e.next = tab[j];
+        tab[j] = e;
+        ++counts[j];
+      }
+    }
+    for (int j = 0; j < n; ++j) {
+      if (counts[j] > treeifyThreshold)
+        tab[j] = new TreeBin<K, V>(tab[j]);
+    }
+    table = tab;
+  }
+
+  final Entry<K, V> getEntry(int hash, Object k) {
+    Entry<K, V> tab[], e;
+    int n;
+    // a bucket not yet moved out of prevTable still holds all its keys
+    if ((tab = prevTable) != null && (e = tab[hash & (tab.length - 1)]) != null)
+      return findInBin(e, hash, k);
+    if ((tab = table) != null && (n = tab.length) > 0 && (e = tab[hash & (n - 1)]) != null)
+      return findInBin(e, hash, k);
+    return null;
+  }
+
+  final Entry<K, V> findInBin(Entry<K, V> e, int hash, Object k) {
+    K key;
+    if (e instanceof TreeBin)
+      return ((TreeBin<K, V>) e).find(hash, k);
+    do {
+      if ((e.hash == hash) && ((key = e.key) == k || (k != null && k.equals(key))))
+        return e;
+    } while ((e = e.next) != null);
+    return null;
+  }
+
   public V put(K k, V v) {
+    if (swiss != null)
+      return swiss.put(k, v, false);
+    return putVal(hashOf(k), k, v, false);
+  }
+
+  public V putIfAbsent(K k, V v) {
+    if (swiss != null)
+      return swiss.put(k, v, true);
+    return putVal(hashOf(k), k, v, true);
+  }
+
+  // returns the previous value, which is kept when onlyIfAbsent is set and it
+  // is not null
+  final V putVal(int hash, K k, V v, boolean onlyIfAbsent) {
     Entry<K, V> tab[], p;
-    int n, i, hash = (k == null) ? 0 : hash(k);
+    int n, i;
+    if (isSmall()) {
+      int j = smallIndex(hash, k);
+      if (j < 0) {
+        smallAdd(hash, k, v);
+        return null;
+      }
+      V oldValue = smallValue(j);
+      if (!onlyIfAbsent || oldValue == null)
+        small[(j << 1) + 1] = v;
+      return oldValue;
+    }
+    if (prevTable != null)
+      helpTransfer(hash);
     if ((tab = table) == null || (n = tab.length) == 0)
-      n = (table = resize()).length;
+      n = (tab = resize()).length;
 
-    if ((p = table[(i = (hash & (n - 1)))]) == null)
-      table[i] = new Entry<K, V>(k, v, hash, null);
+    if ((p = tab[(i = (hash & (n - 1)))]) == null)
+      tab[i] = newEntry(k, v, hash, null);
     else {
       Entry<K, V> e;
       K key;
-      if ((p.hash == hash) && ((key = p.key) == k || (k != null && k.equals(key)))) {
+      if (p instanceof TreeBin) {
+        if ((e = ((TreeBin<K, V>) p).putTreeVal(hash, k, v)) == null && seed != 0 && !strongHash
+            && k instanceof String)
+          strengthenHash();
+      } else if ((p.hash == hash) && ((key = p.key) == k || (k != null && k.equals(key)))) {
         e = p;
       } else {
         for (int count = 0;; ++count) {
           if ((e = p.next) == null) {
-            p.next = new Entry<K, V>(k, v, hash, null);
+            p.next = newEntry(k, v, hash, null);
+            // the bucket now holds count + 2 entries
+            if (count + 2 > treeifyThreshold)
+              treeifyBin(tab, i);
             break;
           }
           if (e.hash == hash && ((key = e.key) == k || (k != null && k.equals(key)))) {
@@ -170,52 +1019,765 @@ public class MyHashMap<K, V> {
       }
       if (e != null) {
         V oldValue = e.getValue();
-        e.setValue(v);
+        if (!onlyIfAbsent || oldValue == null) {
+          e.value = v;
+          afterWrite(e);
+        } else {
+          afterAccess(e);
+        }
         return oldValue;
       }
     }
     if (++size > threshold)
       resize();
+    afterInsert();
     return null;
   }
 
+  // Copies every mapping of m. The table is grown once up front, and the
+  // hashes stored in m's entries are reused instead of calling hashCode().
+  @SuppressWarnings("unchecked")
+  public void putAll(MyHashMap<? extends K, ? extends V> m) {
+    int s = m.size();
+    if (s == 0)
+      return;
+    if (swiss != null) {
+      swiss.reserve(swiss.size + s);
+    } else {
+      if (isSmall() && size + s > SMALL_MAX && size > 0)
+        promote();
+      presize(s);
+      if (m.swiss != null || m.seed != seed || m.strongHash != strongHash) {
+        // the other engine keeps no hashes to reuse, another seed other ones
+        m.forEach(this::put);
+        return;
+      }
+    }
+    if (m.small != null) {
+      for (int j = 0, n = m.size; j < n; ++j) {
+        K k = (K) m.small[j << 1];
+        V v = (V) m.small[(j << 1) + 1];
+        if (swiss != null)
+          swiss.put(k, v, false);
+        else
+          putVal(m.smallHashes[j], k, v, false);
+      }
+    }
+    putEntries(m.prevTable);
+    putEntries(m.table);
+    if (m.swiss != null)
+      m.swiss.forEach((k, v) -> swiss.put(k, v, false));
+  }
+
+  // links a mapping for k, which the caller knows is absent, under the hash
+  // it was stored with, the hashOf() of its entry or SWISS's own, without
+  // comparing any keys
+  final void putNew(int hash, K k, V v) {
+    if (swiss != null)
+      swiss.putNew(hash, k, v);
+    else if (isSmall())
+      smallAdd(hash, k, v);
+    else
+      addEntry(bucketIndex(hash), hash, k, v);
+  }
+
+  final void presize(int s) {
+    float ft = ((float) s / loadFactor) + 1.0F;
+    int t = (ft < (float) MAXIMUM_CAPACITY) ? (int) ft : MAXIMUM_CAPACITY;
+    if (table == null) {
+      if (t > threshold)
+        threshold = tableSizeFor(t);
+    } else {
+      while (s > threshold && table.length < MAXIMUM_CAPACITY)
+        resize();
+    }
+  }
+
+  private void putEntries(MyHashMap<? extends K, ? extends V>.Entry<? extends K, ? extends V> tab[]) {
+    if (tab == null)
+      return;
+    for (MyHashMap<? extends K, ? extends V>.Entry<? extends K, ? extends V> e : tab) {
+      if (e instanceof MyHashMap.TreeBin)
+        e = e.next;
+      for (; e != null; e = e.next) {
+        if (swiss != null)
+          swiss.put(e.key, e.value, false);
+        else
+          putVal(e.hash, e.key, e.value, false);
+      }
+    }
+  }
+
   public V get(K k) {
-    Entry<K, V> tab[], first, e;
+    return getOrDefault(k, null);
+  }
+
+  public V getOrDefault(K k, V defaultValue) {
+    Entry<K, V> e;
+    if (swiss != null) {
+      int i = swiss.find(k, swiss.hash(k));
+      if (stats != null)
+        stats.recordGet(i >= 0);
+      return (i < 0) ? defaultValue : swiss.valueAt(i);
+    }
+    if (isSmall()) {
+      int j = smallIndex(hashOf(k), k);
+      if (stats != null)
+        stats.recordGet(j >= 0);
+      return (j < 0) ? defaultValue : smallValue(j);
+    }
+    if (prevTable != null)
+      transferStep();
+    e = getEntry(hashOf(k), k);
+    if (stats != null)
+      stats.recordGet(e != null);
+    if (e == null)
+      return defaultValue;
+    afterAccess(e);
+    return e.getValue();
+  }
+
+  // Looks up every keys[j] into out[j], null where absent, as get() would.
+  // A loop of get() calls waits for a cache miss on the bucket and then on
+  // the entry of one key before it starts on the next. Here the keys go
+  // through in groups of GET_ALL_GROUP, each stage running over the whole
+  // group before the next one starts: hash every key, read every bucket,
+  // check the first entry of every bucket, then compare keys. The loads
+  // within a stage do not depend on each other, so their misses overlap.
+  // Java has no prefetch instruction, and these independent loads stand in
+  // for one.
+  public void getAll(K keys[], V out[]) {
+    if (out.length < keys.length) {
+      throw new IllegalArgumentException("out is shorter than keys");
+    }
+    if (swiss != null) {
+      swiss.getAll(keys, out);
+      return;
+    }
+    if (isSmall() || prevTable != null || table == null) {
+      for (int j = 0; j < keys.length; ++j)
+        out[j] = get(keys[j]);
+      return;
+    }
+    @SuppressWarnings("unchecked")
+    Entry<K, V> tab[] = table, heads[] = (Entry<K, V>[]) new MyHashMap<?, ?>.Entry<?, ?>[GET_ALL_GROUP];
+    int mask = tab.length - 1, hashes[] = new int[GET_ALL_GROUP];
+    boolean first[] = new boolean[GET_ALL_GROUP];
+    for (int base = 0; base < keys.length; base += GET_ALL_GROUP) {
+      int g = Math.min(GET_ALL_GROUP, keys.length - base);
+      for (int j = 0; j < g; ++j)
+        hashes[j] = hashOf(keys[base + j]);
+      for (int j = 0; j < g; ++j)
+        heads[j] = tab[hashes[j] & mask];
+      // whether the first entry of the bucket is worth comparing keys with
+      for (int j = 0; j < g; ++j) {
+        Entry<K, V> e = heads[j];
+        first[j] = e != null && e.hash == hashes[j] && !(e instanceof TreeBin);
+      }
+      for (int j = 0; j < g; ++j) {
+        K k = keys[base + j], key;
+        Entry<K, V> e = heads[j];
+        if (e != null && !(first[j] && ((key = e.key) == k || (k != null && k.equals(key)))))
+          e = findInBin(e, hashes[j], k);
+        if (stats != null)
+          stats.recordGet(e != null);
+        if (e == null) {
+          out[base + j] = null;
+        } else {
+          afterAccess(e);
+          out[base + j] = e.value;
+        }
+      }
+    }
+  }
+
+  public V remove(K k) {
+    Entry<K, V> e;
+    if (swiss != null)
+      return swiss.remove(k);
+    if (isSmall()) {
+      int j = smallIndex(hashOf(k), k);
+      if (j < 0)
+        return null;
+      V oldValue = smallValue(j);
+      smallRemove(j);
+      return oldValue;
+    }
+    return (e = removeEntry(hashOf(k), k)) == null ? null : e.getValue();
+  }
+
+  final Entry<K, V> removeEntry(int hash, Object k) {
+    Entry<K, V> tab[], p, e;
     K key;
-    int n, hash;
-    if ((tab = table) != null && (n = tab.length) > 0 && (first = tab[(hash = hash(k)) & (n - 1)]) != null) {
-      if ((first.hash == hash) && ((key = first.getKey()) == k) && (k != null && k.equals(key)))
-        return first.getValue();
-      if ((e = first.next) != null) {
-        do {
-          if ((e.hash == hash) && ((key = e.getKey()) == k) && (k != null && k.equals(key)))
-            return e.getValue();
-        } while ((e = e.next) != null);
+    int n, i;
+    if (prevTable != null)
+      helpTransfer(hash);
+    if ((tab = table) == null || (n = tab.length) == 0 || (p = tab[i = hash & (n - 1)]) == null)
+      return null;
+    if (p instanceof TreeBin) {
+      TreeBin<K, V> bin = (TreeBin<K, V>) p;
+      if ((e = bin.remove(hash, k)) != null) {
+        if (bin.count <= untreeifyThreshold)
+          tab[i] = bin.next;
+        --size;
+        afterRemoval(e);
+      }
+      return e;
+    }
+    if (p.hash == hash && ((key = p.key) == k || (k != null && k.equals(key)))) {
+      tab[i] = p.next;
+      --size;
+      afterRemoval(p);
+      return p;
+    }
+    for (; (e = p.next) != null; p = e) {
+      if (e.hash == hash && ((key = e.key) == k || (k != null && k.equals(key)))) {
+        p.next = e.next;
+        --size;
+        afterRemoval(e);
+        return e;
       }
     }
     return null;
   }
 
+  // conditional remove, true when k was mapped to v and has been removed
+  public boolean remove(K k, V v) {
+    if (swiss != null)
+      return swiss.remove(k, v);
+    if (isSmall()) {
+      int j = smallIndex(hashOf(k), k);
+      if (j < 0 || !Objects.equals(smallValue(j), v))
+        return false;
+      smallRemove(j);
+      return true;
+    }
+    int hash = hashOf(k), i = bucketIndex(hash);
+    Entry<K, V> e = findInBucket(i, hash, k);
+    if (e == null || !Objects.equals(e.value, v))
+      return false;
+    unlinkEntry(i, e);
+    return true;
+  }
+
   public boolean containsKey(K k) {
-    return get(k) != null;
+    if (swiss != null)
+      return swiss.containsKey(k);
+    if (isSmall())
+      return smallIndex(hashOf(k), k) >= 0;
+    if (prevTable != null)
+      transferStep();
+    return getEntry(hashOf(k), k) != null;
   }
 
-  @Override
-  public String toString() {
-    String res = "";
-    Entry<K, V> tab[], p;
-    int n;
-    if ((tab = table) != null && (n = tab.length) > 0) {
-      for (int i = 0; i < n; i++) {
-        if ((p = tab[i]) != null)
-          res = res + p.toString() + ", ";
+  // The compute methods below hash k and walk its bucket once, then update
+  // the entry they found in place, or link a new one into the same bucket.
+  // The functions must not modify this map.
+
+  public V computeIfAbsent(K k, Function<? super K, ? extends V> mappingFunction) {
+    Objects.requireNonNull(mappingFunction);
+    if (swiss != null)
+      return swiss.computeIfAbsent(k, mappingFunction);
+    int hash = hashOf(k);
+    if (isSmall()) {
+      int j = smallIndex(hash, k);
+      V v;
+      if (j >= 0 && (v = smallValue(j)) != null)
+        return v;
+      if ((v = mappingFunction.apply(k)) == null)
+        return null;
+      if (j >= 0)
+        small[(j << 1) + 1] = v;
+      else
+        smallAdd(hash, k, v);
+      return v;
+    }
+    int i = bucketIndex(hash);
+    Entry<K, V> e = findInBucket(i, hash, k);
+    V v;
+    if (e != null && (v = e.value) != null) {
+      afterAccess(e);
+      return v;
+    }
+    if ((v = mappingFunction.apply(k)) == null)
+      return null;
+    if (e != null) {
+      e.value = v;
+      afterWrite(e);
+    } else {
+      addEntry(i, hash, k, v);
+    }
+    return v;
+  }
+
+  public V computeIfPresent(K k, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+    if (swiss != null)
+      return swiss.computeIfPresent(k, remappingFunction);
+    int hash = hashOf(k);
+    if (isSmall()) {
+      int j = smallIndex(hash, k);
+      V oldValue, v;
+      if (j < 0 || (oldValue = smallValue(j)) == null)
+        return null;
+      if ((v = remappingFunction.apply(k, oldValue)) == null)
+        smallRemove(j);
+      else
+        small[(j << 1) + 1] = v;
+      return v;
+    }
+    int i = bucketIndex(hash);
+    Entry<K, V> e = findInBucket(i, hash, k);
+    V oldValue, v;
+    if (e == null || (oldValue = e.value) == null)
+      return null;
+    if ((v = remappingFunction.apply(k, oldValue)) == null) {
+      unlinkEntry(i, e);
+    } else {
+      e.value = v;
+      afterWrite(e);
+    }
+    return v;
+  }
+
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+    if (swiss != null)
+      return swiss.compute(k, remappingFunction);
+    int hash = hashOf(k);
+    if (isSmall()) {
+      int j = smallIndex(hash, k);
+      V v = remappingFunction.apply(k, (j < 0) ? null : smallValue(j));
+      if (v == null) {
+        if (j >= 0)
+          smallRemove(j);
+      } else if (j >= 0) {
+        small[(j << 1) + 1] = v;
+      } else {
+        smallAdd(hash, k, v);
       }
+      return v;
+    }
+    int i = bucketIndex(hash);
+    Entry<K, V> e = findInBucket(i, hash, k);
+    V v = remappingFunction.apply(k, (e == null) ? null : e.value);
+    if (v == null) {
+      if (e != null)
+        unlinkEntry(i, e);
+    } else if (e != null) {
+      e.value = v;
+      afterWrite(e);
+    } else {
+      addEntry(i, hash, k, v);
+    }
+    return v;
+  }
+
+  // maps k to v when it is absent or null, otherwise to the combination of the
+  // old value and v, or removes it when that is null
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    Objects.requireNonNull(v);
+    Objects.requireNonNull(remappingFunction);
+    if (swiss != null)
+      return swiss.merge(k, v, remappingFunction);
+    int hash = hashOf(k);
+    if (isSmall()) {
+      int j = smallIndex(hash, k);
+      V oldValue;
+      if (j < 0)
+        smallAdd(hash, k, v);
+      else if ((oldValue = smallValue(j)) != null && (v = remappingFunction.apply(oldValue, v)) == null)
+        smallRemove(j);
+      else
+        small[(j << 1) + 1] = v;
+      return v;
+    }
+    int i = bucketIndex(hash);
+    Entry<K, V> e = findInBucket(i, hash, k);
+    if (e == null) {
+      addEntry(i, hash, k, v);
+      return v;
+    }
+    V oldValue = e.value;
+    if (oldValue != null && (v = remappingFunction.apply(oldValue, v)) == null) {
+      unlinkEntry(i, e);
+    } else {
+      e.value = v;
+      afterWrite(e);
+    }
+    return v;
+  }
+
+  // readies the bucket of hash for an update, moving it out of prevTable and
+  // allocating the table on first use, and returns its index in table
+  final int bucketIndex(int hash) {
+    Entry<K, V> tab[];
+    if (prevTable != null)
+      helpTransfer(hash);
+    if ((tab = table) == null || tab.length == 0)
+      tab = resize();
+    return hash & (tab.length - 1);
+  }
 
+  final Entry<K, V> findInBucket(int i, int hash, Object k) {
+    Entry<K, V> p;
+    return ((p = table[i]) == null) ? null : findInBin(p, hash, k);
+  }
+
+  // links a new entry for k, which the caller found absent, into bucket i
+  final void addEntry(int i, int hash, K k, V v) {
+    Entry<K, V> tab[] = table, p = tab[i];
+    if (p instanceof TreeBin) {
+      ((TreeBin<K, V>) p).putTreeVal(hash, k, v);
+      if (seed != 0 && !strongHash && k instanceof String)
+        strengthenHash();
+    } else {
+      tab[i] = newEntry(k, v, hash, p);
+      // the chain is only counted as far as the treeify threshold
+      int count = 1;
+      for (; p != null && count <= treeifyThreshold; p = p.next)
+        ++count;
+      if (count > treeifyThreshold)
+        treeifyBin(tab, i);
     }
-    if (!res.equals("")) {
-      res = res.substring(0, res.length() - 2);
+    if (++size > threshold)
+      resize();
+    afterInsert();
+  }
+
+  // unlinks e, which the caller found in bucket i
+  final void unlinkEntry(int i, Entry<K, V> e) {
+    Entry<K, V> tab[] = table, p = tab[i];
+    if (p instanceof TreeBin) {
+      TreeBin<K, V> bin = (TreeBin<K, V>) p;
+      bin.remove(e.hash, e.key);
+      if (bin.count <= untreeifyThreshold)
+        tab[i] = bin.next;
+    } else if (p == e) {
+      tab[i] = e.next;
+    } else {
+      while (p.next != e)
+        p = p.next;
+      p.next = e.next;
     }
-    return "{" + res + "}";
+    --size;
+    afterRemoval(e);
+  }
+
+  public void clear() {
+    if (swiss != null) {
+      swiss.clear();
+      return;
+    }
+    if (adaptive) {
+      table = prevTable = null;
+      threshold = 0;
+    } else if (table != null) {
+      if (prevTable != null)
+        finishTransfer();
+      Arrays.fill(table, null);
+    }
+    small = null;
+    smallHashes = null;
+    size = 0;
+  }
+
+  // Calls action for every mapping, straight over whatever holds them, so no
+  // iterator or entry objects are created. The action must not modify this
+  // map.
+  @SuppressWarnings("unchecked")
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    Objects.requireNonNull(action);
+    if (swiss != null) {
+      swiss.forEach(action);
+    } else if (isSmall()) {
+      for (int j = 0; j < size; ++j)
+        action.accept((K) small[j << 1], smallValue(j));
+    } else {
+      // buckets already moved out of prevTable are null there
+      forEach(prevTable, action);
+      forEach(table, action);
+    }
+  }
+
+  private void forEach(Entry<K, V> tab[], BiConsumer<? super K, ? super V> action) {
+    if (tab == null)
+      return;
+    for (Entry<K, V> e : tab) {
+      if (e instanceof TreeBin)
+        e = e.next;
+      for (; e != null; e = e.next)
+        action.accept(e.key, e.value);
+    }
+  }
+
+  public void forEachKey(Consumer<? super K> action) {
+    Objects.requireNonNull(action);
+    forEach((k, v) -> action.accept(k));
+  }
+
+  public void forEachValue(Consumer<? super V> action) {
+    Objects.requireNonNull(action);
+    forEach((k, v) -> action.accept(v));
+  }
+
+  // reduceKeysToLong(k -> 1, 0, Long::sum) counts, for example, with no
+  // boxing on the way
+  public long reduceKeysToLong(ToLongFunction<? super K> transformer, long basis, LongBinaryOperator reducer) {
+    Objects.requireNonNull(transformer);
+    Objects.requireNonNull(reducer);
+    long acc[] = { basis };
+    forEach((k, v) -> acc[0] = reducer.applyAsLong(acc[0], transformer.applyAsLong(k)));
+    return acc[0];
+  }
+
+  public long reduceValuesToLong(ToLongFunction<? super V> transformer, long basis, LongBinaryOperator reducer) {
+    Objects.requireNonNull(transformer);
+    Objects.requireNonNull(reducer);
+    long acc[] = { basis };
+    forEach((k, v) -> acc[0] = reducer.applyAsLong(acc[0], transformer.applyAsLong(v)));
+    return acc[0];
+  }
+
+  // An immutable copy on a minimal perfect hash, for a table that is only
+  // read from now on. This map is left as it is.
+  public FrozenMyHashMap<K, V> freeze() {
+    return FrozenMyHashMap.of(this);
+  }
+
+  // The views below are backed by the map. Their iterators and spliterators
+  // are not fail-fast, and only remove(Object) and clear() write through,
+  // along with setValue() on entries.
+
+  public Set<K> keySet() {
+    Set<K> ks;
+    return ((ks = keySet) == null) ? (keySet = new KeySet()) : ks;
+  }
+
+  public Collection<V> values() {
+    Collection<V> vs;
+    return ((vs = values) == null) ? (values = new Values()) : vs;
+  }
+
+  public Set<Map.Entry<K, V>> entrySet() {
+    Set<Map.Entry<K, V>> es;
+    return ((es = entrySet) == null) ? (entrySet = new EntrySet()) : es;
+  }
+
+  final class KeySet extends AbstractSet<K> {
+    public int size() {
+      return MyHashMap.this.size();
+    }
+
+    public void clear() {
+      MyHashMap.this.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+      return containsKey((K) o);
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) {
+      int n = MyHashMap.this.size();
+      MyHashMap.this.remove((K) o);
+      return MyHashMap.this.size() != n;
+    }
+
+    public Iterator<K> iterator() {
+      return Spliterators.iterator(spliterator());
+    }
+
+    public Spliterator<K> spliterator() {
+      return new MapSpliterator<K>(KEYS);
+    }
+
+    public void forEach(Consumer<? super K> action) {
+      forEachKey(action);
+    }
+  }
+
+  final class Values extends AbstractCollection<V> {
+    public int size() {
+      return MyHashMap.this.size();
+    }
+
+    public void clear() {
+      MyHashMap.this.clear();
+    }
+
+    public Iterator<V> iterator() {
+      return Spliterators.iterator(spliterator());
+    }
+
+    public Spliterator<V> spliterator() {
+      return new MapSpliterator<V>(VALUES);
+    }
+
+    public void forEach(Consumer<? super V> action) {
+      forEachValue(action);
+    }
+  }
+
+  final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+    public int size() {
+      return MyHashMap.this.size();
+    }
+
+    public void clear() {
+      MyHashMap.this.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+      if (!(o instanceof Map.Entry))
+        return false;
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      K k = (K) e.getKey();
+      return containsKey(k) && Objects.equals(get(k), e.getValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) {
+      if (!(o instanceof Map.Entry))
+        return false;
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      return MyHashMap.this.remove((K) e.getKey(), (V) e.getValue());
+    }
+
+    public Iterator<Map.Entry<K, V>> iterator() {
+      return Spliterators.iterator(spliterator());
+    }
+
+    public Spliterator<Map.Entry<K, V>> spliterator() {
+      return new MapSpliterator<Map.Entry<K, V>>(ENTRIES);
+    }
+  }
+
+  // entry handed out for SWISS and small maps, which keep no Entry objects
+  final class ViewEntry extends AbstractMap.SimpleEntry<K, V> {
+    private static final long serialVersionUID = 1L;
+
+    ViewEntry(K k, V v) {
+      super(k, v);
+    }
+
+    public V setValue(V v) {
+      put(getKey(), v);
+      return super.setValue(v);
+    }
+  }
+
+  static final int KEYS = 0, VALUES = 1, ENTRIES = 2;
+
+  // Walks the index range [index, fence) of whichever array holds the
+  // mappings: the chained table, the SWISS slots or the packed small array.
+  // trySplit() hands off the lower half of the range, so a parallel stream
+  // over a large table keeps every core busy.
+  final class MapSpliterator<T> implements Spliterator<T> {
+    final int kind;
+    final Entry<K, V> tab[];
+    final SwissTable<K, V> sw;
+    final Object packed[];
+    int index, fence, est;
+    // next entry of the bucket being walked
+    Entry<K, V> next;
+
+    MapSpliterator(int kind) {
+      if (prevTable != null)
+        finishTransfer();
+      this.kind = kind;
+      this.sw = swiss;
+      this.tab = (swiss == null) ? table : null;
+      this.packed = isSmall() ? small : null;
+      this.fence = (sw != null) ? sw.ctrl.length : (tab != null) ? tab.length : (packed != null) ? size : 0;
+      this.est = MyHashMap.this.size();
+    }
+
+    MapSpliterator(MapSpliterator<T> parent, int index, int fence, int est) {
+      this.kind = parent.kind;
+      this.tab = parent.tab;
+      this.sw = parent.sw;
+      this.packed = parent.packed;
+      this.index = index;
+      this.fence = fence;
+      this.est = est;
+    }
+
+    @SuppressWarnings("unchecked")
+    T element(K k, V v, Entry<K, V> e) {
+      switch (kind) {
+        case KEYS:
+          return (T) k;
+        case VALUES:
+          return (T) v;
+        default:
+          return (T) ((e != null) ? e : new ViewEntry(k, v));
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean tryAdvance(Consumer<? super T> action) {
+      Objects.requireNonNull(action);
+      if (sw != null) {
+        byte c[] = sw.ctrl;
+        while (index < fence) {
+          int i = index++;
+          if (c[i] >= 0) {
+            action.accept(element(sw.keyAt(i), sw.valueAt(i), null));
+            return true;
+          }
+        }
+      } else if (packed != null) {
+        if (index < fence) {
+          int j = index++;
+          action.accept(element((K) packed[j << 1], (V) packed[(j << 1) + 1], null));
+          return true;
+        }
+      } else {
+        Entry<K, V> e;
+        while ((e = next) != null || index < fence) {
+          if (e == null) {
+            if ((e = tab[index++]) instanceof TreeBin)
+              e = e.next;
+            if (e == null)
+              continue;
+          }
+          next = e.next;
+          action.accept(element(e.key, e.value, e));
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public Spliterator<T> trySplit() {
+      int lo = index, mid = (lo + fence) >>> 1;
+      if (lo >= mid || next != null)
+        return null;
+      index = mid;
+      return new MapSpliterator<T>(this, lo, mid, est >>>= 1);
+    }
+
+    public long estimateSize() {
+      return est;
+    }
+
+    public int characteristics() {
+      int c = (kind == VALUES) ? 0 : Spliterator.DISTINCT;
+      // only the unsplit spliterator knows its exact size
+      return (est == MyHashMap.this.size() && index == 0) ? c | Spliterator.SIZED : c;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder res = new StringBuilder("{");
+    forEach((k, v) -> res.append(k).append('=').append(v).append(", "));
+    if (res.length() > 1)
+      res.setLength(res.length() - 2);
+    return res.append('}').toString();
   }
 
 }
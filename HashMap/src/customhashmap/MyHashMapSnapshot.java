@@ -0,0 +1,283 @@
+package customhashmap;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+// Binary dump and restore of a MyHashMap through a channel. The stream is
+// [header][size records], the header holding the engine, load factor,
+// treeify threshold, hash seed and mode and size, and every record being
+// [int length][int hash][byte flags][key][value], the length counting what
+// follows it, the hash being the one the map stores for the key, and the flags
+// marking a null key or value, which is then left out. Records are written
+// in table order straight from the buckets, and the loader builds the table
+// at its final size up front and links each record under its stored hash,
+// so neither side calls hashCode() or equals() on the chained engine.
+// Keys and values are turned into bytes by Codecs, a few common ones are
+// provided below.
+public final class MyHashMapSnapshot {
+
+  static final long MAGIC = 0x4d79484d536e7031L; // "MyHMSnp1"
+  static final int VERSION = 1, HEADER_BYTES = 34, BUFFER_BYTES = 1 << 20;
+  static final int NULL_KEY = 1, NULL_VALUE = 2;
+  // the largest record a Writer's buffer can grow to hold, larger lengths
+  // are corrupt
+  static final int MAX_RECORD_BYTES = (1 << 30) - 4;
+
+  // Writes one non-null object, in any number of bytes, at the position of
+  // out, and reads it back. encode() may throw BufferOverflowException, the
+  // record is then retried in a larger buffer.
+  public interface Codec<T> {
+    void encode(T t, ByteBuffer out);
+
+    T decode(ByteBuffer in);
+  }
+
+  public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+    public void encode(Integer t, ByteBuffer out) {
+      out.putInt(t);
+    }
+
+    public Integer decode(ByteBuffer in) {
+      return in.getInt();
+    }
+  };
+
+  public static final Codec<Long> LONG = new Codec<Long>() {
+    public void encode(Long t, ByteBuffer out) {
+      out.putLong(t);
+    }
+
+    public Long decode(ByteBuffer in) {
+      return in.getLong();
+    }
+  };
+
+  // UTF-8 bytes after their count
+  public static final Codec<String> STRING = new Codec<String>() {
+    public void encode(String t, ByteBuffer out) {
+      byte b[] = t.getBytes(StandardCharsets.UTF_8);
+      out.putInt(b.length).put(b);
+    }
+
+    public String decode(ByteBuffer in) {
+      int n = in.getInt(), at = in.position();
+      in.position(at + n);
+      return new String(in.array(), in.arrayOffset() + at, n, StandardCharsets.UTF_8);
+    }
+  };
+
+  private MyHashMapSnapshot() {
+  }
+
+  public static <K, V> void write(MyHashMap<K, V> m, WritableByteChannel channel, Codec<? super K> keyCodec,
+      Codec<? super V> valueCodec) throws IOException {
+    new Writer<K, V>(channel, keyCodec, valueCodec).write(m);
+  }
+
+  public static <K, V> MyHashMap<K, V> read(ReadableByteChannel channel, Codec<? extends K> keyCodec,
+      Codec<? extends V> valueCodec) throws IOException {
+    return new Reader<K, V>(channel, keyCodec, valueCodec).read();
+  }
+
+  static final class Writer<K, V> {
+    final WritableByteChannel channel;
+    final Codec<? super K> keyCodec;
+    final Codec<? super V> valueCodec;
+    // replaced by a larger one for a record that does not fit
+    ByteBuffer buf;
+    // bytes handed to the channel so far
+    long flushed;
+
+    Writer(WritableByteChannel channel, Codec<? super K> keyCodec, Codec<? super V> valueCodec) {
+      this(channel, keyCodec, valueCodec, ByteBuffer.allocate(BUFFER_BYTES));
+    }
+
+    // writes through buf, which the caller may reuse once done with this
+    // writer, taking it from the buf field as it may have been replaced
+    Writer(WritableByteChannel channel, Codec<? super K> keyCodec, Codec<? super V> valueCodec, ByteBuffer buf) {
+      this.channel = channel;
+      this.keyCodec = keyCodec;
+      this.valueCodec = valueCodec;
+      this.buf = buf.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    void write(MyHashMap<K, V> m) throws IOException {
+      if (m.prevTable != null)
+        m.finishTransfer();
+      int n = m.size();
+      buf.putLong(MAGIC).putInt(VERSION).put((byte) m.engine().ordinal()).putFloat(m.loadFactor)
+          .putInt(m.treeifyThreshold).putLong(m.seed)
+          .put((byte) (m.isStrongHash() ? 1 : 0)).putInt(n);
+      if (m.swiss != null) {
+        SwissTable<K, V> sw = m.swiss;
+        for (int i = 0, cap = sw.ctrl.length; i < cap; ++i) {
+          if (sw.ctrl[i] >= 0) {
+            K k = sw.keyAt(i);
+            record(sw.hash(k), k, sw.valueAt(i));
+          }
+        }
+      } else if (m.isSmall()) {
+        for (int j = 0; j < n; ++j)
+          record(m.smallHashes[j], (K) m.small[j << 1], (V) m.small[(j << 1) + 1]);
+      } else if (m.table != null) {
+        for (MyHashMap<K, V>.Entry<K, V> e : m.table) {
+          if (e instanceof MyHashMap.TreeBin)
+            e = e.next;
+          for (; e != null; e = e.next)
+            record(e.hash, e.key, e.value);
+        }
+      }
+      flush();
+    }
+
+    // offset of the next record from where the writer started
+    long position() {
+      return flushed + buf.position();
+    }
+
+    void record(int hash, K k, V v) throws IOException {
+      record(hash, 0, k, v);
+    }
+
+    // flags are stored along with NULL_KEY and NULL_VALUE, which they must not use
+    void record(int hash, int flags, K k, V v) throws IOException {
+      for (;;) {
+        if (buf.remaining() < 9)
+          flush();
+        int start = buf.position();
+        try {
+          buf.position(start + 4);
+          buf.putInt(hash).put((byte) (flags | (k == null ? NULL_KEY : 0) | (v == null ? NULL_VALUE : 0)));
+          if (k != null)
+            keyCodec.encode(k, buf);
+          if (v != null)
+            valueCodec.encode(v, buf);
+          buf.putInt(start, buf.position() - start - 4);
+          return;
+        } catch (BufferOverflowException e) {
+          buf.position(start);
+          // a record larger than the whole buffer gets a larger one
+          if (start == 0)
+            buf = ByteBuffer.allocate(buf.capacity() << 1);
+          else
+            flush();
+        }
+      }
+    }
+
+    void flush() throws IOException {
+      buf.flip();
+      flushed += buf.remaining();
+      while (buf.hasRemaining())
+        channel.write(buf);
+      buf.clear();
+    }
+  }
+
+  static final class Reader<K, V> {
+    final ReadableByteChannel channel;
+    final Codec<? extends K> keyCodec;
+    final Codec<? extends V> valueCodec;
+    ByteBuffer buf;
+    // the record last read by next()
+    int hash, flags;
+    K key;
+    V value;
+
+    Reader(ReadableByteChannel channel, Codec<? extends K> keyCodec, Codec<? extends V> valueCodec) {
+      this(channel, keyCodec, valueCodec, BUFFER_BYTES);
+    }
+
+    Reader(ReadableByteChannel channel, Codec<? extends K> keyCodec, Codec<? extends V> valueCodec,
+        int bufferBytes) {
+      this(channel, keyCodec, valueCodec, ByteBuffer.allocate(bufferBytes));
+    }
+
+    // reads through buf, which the caller may reuse like a Writer's
+    Reader(ReadableByteChannel channel, Codec<? extends K> keyCodec, Codec<? extends V> valueCodec,
+        ByteBuffer buf) {
+      this.channel = channel;
+      this.keyCodec = keyCodec;
+      this.valueCodec = valueCodec;
+      this.buf = buf.clear().flip();
+    }
+
+    MyHashMap<K, V> read() throws IOException {
+      fill(HEADER_BYTES);
+      if (buf.getLong() != MAGIC || buf.getInt() != VERSION)
+        throw new StreamCorruptedException("not a MyHashMap snapshot");
+      int engine = buf.get();
+      float loadFactor = buf.getFloat();
+      int treeifyThreshold = buf.getInt();
+      long seed = buf.getLong();
+      boolean strongHash = buf.get() != 0;
+      int n = buf.getInt();
+      if (engine < 0 || engine >= MyHashMap.Engine.values().length || n < 0)
+        throw new StreamCorruptedException("corrupt snapshot header");
+      MyHashMap<K, V> m = new MyHashMap<K, V>(Math.max(n, 1), loadFactor, treeifyThreshold,
+          MyHashMap.Engine.values()[engine]);
+      // the stored hashes are only valid under the seed they were made with
+      m.setSeed(seed, strongHash);
+      if (m.swiss != null)
+        m.swiss.reserve(n);
+      else if (!m.isSmall())
+        m.presize(n);
+      for (int i = 0; i < n; ++i) {
+        next(i);
+        // a load that turns strong hashing on leaves the other stored hashes stale
+        if (m.isStrongHash() == strongHash)
+          m.putNew(hash, key, value);
+        else
+          m.put(key, value);
+      }
+      return m;
+    }
+
+    // reads record i into hash, flags, key and value
+    void next(int i) throws IOException {
+      fill(4);
+      int length = buf.getInt();
+      if (length < 5 || length > MAX_RECORD_BYTES)
+        throw new StreamCorruptedException("corrupt record " + i);
+      fill(length);
+      int end = buf.position() + length;
+      hash = buf.getInt();
+      flags = buf.get();
+      try {
+        key = ((flags & NULL_KEY) != 0) ? null : keyCodec.decode(buf);
+        value = ((flags & NULL_VALUE) != 0) ? null : valueCodec.decode(buf);
+      } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+        throw new StreamCorruptedException("corrupt record " + i);
+      }
+      if (buf.position() != end)
+        throw new StreamCorruptedException("corrupt record " + i);
+    }
+
+    // makes sure n bytes can be read from buf
+    void fill(int n) throws IOException {
+      if (buf.remaining() >= n)
+        return;
+      // the buffer below would overflow to a negative size
+      if (n > MAX_RECORD_BYTES)
+        throw new StreamCorruptedException("record of " + n + " bytes");
+      if (n > buf.capacity())
+        buf = ByteBuffer.allocate(Integer.highestOneBit(n) << 1).put(buf);
+      else
+        buf.compact();
+      while (buf.position() < n) {
+        if (channel.read(buf) < 0)
+          throw new EOFException("snapshot ends early");
+      }
+      buf.flip();
+    }
+  }
+
+}
@@ -0,0 +1,124 @@
+package customhashmap;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Statistics of one MyHashMap, kept only after setStatsEnabled(true). The
+// counters are plain fields updated by the thread using the map, a JMX
+// reader may see them slightly behind.
+public class MyHashMapStats implements MyHashMapStatsMXBean {
+
+  static final int HISTOGRAM_LENGTH = 17;
+
+  final MyHashMap<?, ?> map;
+  long hits, misses, resizes, resizeNanos, evictions;
+
+  MyHashMapStats(MyHashMap<?, ?> map) {
+    this.map = map;
+  }
+
+  final void recordGet(boolean hit) {
+    if (hit)
+      ++hits;
+    else
+      ++misses;
+  }
+
+  final void recordResize(long nanos) {
+    ++resizes;
+    resizeNanos += nanos;
+  }
+
+  final void recordEviction() {
+    ++evictions;
+  }
+
+  // registers this under customhashmap:type=MyHashMap,name=<name> with the
+  // platform MBean server
+  public ObjectName register(String name) throws JMException {
+    ObjectName objectName = new ObjectName("customhashmap:type=MyHashMap,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+
+  public static void unregister(ObjectName objectName) throws JMException {
+    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+  }
+
+  @Override
+  public String getEngine() {
+    return map.engine().name();
+  }
+
+  @Override
+  public int getSize() {
+    return map.size();
+  }
+
+  @Override
+  public int getCapacity() {
+    return map.capacity();
+  }
+
+  @Override
+  public float getConfiguredLoadFactor() {
+    return map.loadFactor;
+  }
+
+  @Override
+  public double getActualLoad() {
+    int cap = map.capacity();
+    return (cap == 0) ? 0 : (double) map.size() / cap;
+  }
+
+  @Override
+  public long[] getChainHistogram() {
+    long hist[] = new long[HISTOGRAM_LENGTH];
+    map.chainHistogram(hist);
+    return hist;
+  }
+
+  @Override
+  public int getMaxChain() {
+    return map.chainHistogram(new long[HISTOGRAM_LENGTH]);
+  }
+
+  @Override
+  public long getHits() {
+    return hits;
+  }
+
+  @Override
+  public long getMisses() {
+    return misses;
+  }
+
+  @Override
+  public long getResizes() {
+    return resizes;
+  }
+
+  @Override
+  public long getResizeNanos() {
+    return resizeNanos;
+  }
+
+  @Override
+  public long getEvictions() {
+    return evictions;
+  }
+
+  @Override
+  public void reset() {
+    hits = misses = resizes = resizeNanos = evictions = 0;
+  }
+
+  @Override
+  public String toString() {
+    return "MyHashMapStats{engine=" + getEngine() + ", size=" + getSize() + ", capacity=" + getCapacity()
+        + ", actualLoad=" + getActualLoad() + ", maxChain=" + getMaxChain() + ", hits=" + hits + ", misses="
+        + misses + ", resizes=" + resizes + ", resizeNanos=" + resizeNanos + ", evictions=" + evictions + "}";
+  }
+
+}
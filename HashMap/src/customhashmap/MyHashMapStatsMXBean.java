@@ -0,0 +1,40 @@
+package customhashmap;
+
+// JMX view of a MyHashMap's statistics, see MyHashMapStats.register(). The
+// shape attributes are computed from the table on every read, so reading
+// them while the map is being written gives approximate numbers.
+public interface MyHashMapStatsMXBean {
+
+  String getEngine();
+
+  int getSize();
+
+  int getCapacity();
+
+  float getConfiguredLoadFactor();
+
+  // size / capacity right now
+  double getActualLoad();
+
+  // CHAINED: element i counts the buckets holding i entries, the last one
+  // also counts the longer buckets. SWISS: element i counts the keys found
+  // in the (i + 1)th group probed. A small packed map is one chain.
+  long[] getChainHistogram();
+
+  int getMaxChain();
+
+  long getHits();
+
+  long getMisses();
+
+  long getResizes();
+
+  long getResizeNanos();
+
+  // entries dropped by a CacheMyHashMap to stay within its bound, or expired
+  // by an ExpiringMyHashMap
+  long getEvictions();
+
+  void reset();
+
+}
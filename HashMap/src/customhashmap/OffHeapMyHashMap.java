@@ -0,0 +1,303 @@
+package customhashmap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Map of fixed-width binary keys to fixed-width binary values kept outside the
+// Java heap. Every slot of the power-of-two table is laid out inline as
+// [int hash][key bytes][value bytes] in direct ByteBuffer pages, probed
+// linearly, so there are no Entry objects and nothing for the GC to trace.
+// The memory is only given back by close().
+public class OffHeapMyHashMap implements AutoCloseable {
+
+  static final int DEFAULT_INITIAL_CAPACITY = 16, MAXIMUM_CAPACITY = 1 << 30;
+  static final float DEFAULT_LOAD_FACTOR = 0.75f;
+  static final int MAX_PAGE_BYTES = 1 << 30;
+  // stored hash of an empty slot, a real hash of 0 is stored as 1
+  static final int EMPTY = 0;
+  static final int HASH_BYTES = 4;
+
+  private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    try {
+      Class<?> c = Class.forName("sun.misc.Unsafe");
+      Field f = c.getDeclaredField("theUnsafe");
+      f.setAccessible(true);
+      unsafe = f.get(null);
+      invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // no explicit release, the buffers go away with the GC
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+  }
+
+  final int keySize, valueSize, slotSize;
+  int size, threshold, capacity, mask, pageShift, pageMask;
+  float loadFactor;
+  ByteBuffer pages[];
+
+  public OffHeapMyHashMap(int keySize, int valueSize, int iniCap, float loadFactor) {
+    this(keySize, valueSize, loadFactor);
+    if (iniCap <= 0) {
+      throw new IllegalArgumentException("initial capacity should be greater than 0");
+    }
+    this.pages = allocate(tableSizeFor(iniCap, loadFactor));
+  }
+
+  // sets up the slot geometry only, the subclass allocates the pages
+  OffHeapMyHashMap(int keySize, int valueSize, float loadFactor) {
+    if (keySize <= 0 || valueSize < 0) {
+      throw new IllegalArgumentException("Illegal key or value size");
+    }
+    if (loadFactor <= 0 || loadFactor >= 1) {
+      throw new IllegalArgumentException("Illegal load factor");
+    }
+    this.keySize = keySize;
+    this.valueSize = valueSize;
+    this.slotSize = HASH_BYTES + keySize + valueSize;
+    this.loadFactor = loadFactor;
+    int shift = 31 - Integer.numberOfLeadingZeros(MAX_PAGE_BYTES / slotSize);
+    if (shift < 0) {
+      throw new IllegalArgumentException("key and value too large for a page");
+    }
+    this.pageShift = shift;
+    this.pageMask = (1 << shift) - 1;
+  }
+
+  public OffHeapMyHashMap(int keySize, int valueSize, int iniCap) {
+    this(keySize, valueSize, iniCap, DEFAULT_LOAD_FACTOR);
+  }
+
+  public OffHeapMyHashMap(int keySize, int valueSize) {
+    this(keySize, valueSize, DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+  }
+
+  // Arrays.hashCode() collides too often on short keys for linear probing,
+  // so the key is folded eight bytes at a time through a golden ratio
+  // multiply, then spread like MyHashMap.hash()
+  static final int hash(byte[] key) {
+    long x = key.length;
+    int i = 0, n = key.length;
+    for (; i + 8 <= n; i += 8)
+      x = (x ^ (long) LONGS.get(key, i)) * 0x9E3779B97F4A7C15L;
+    for (; i < n; i++)
+      x = (x ^ (key[i] & 0xff)) * 0x9E3779B97F4A7C15L;
+    int h = (int) (x ^ (x >>> 32));
+    h ^= h >>> 16;
+    return (h == EMPTY) ? 1 : h;
+  }
+
+  static int tableSizeFor(int entries, float loadFactor) {
+    int cap = MyHashMap.tableSizeFor((int) Math.min(MAXIMUM_CAPACITY, Math.ceil(entries / loadFactor)));
+    return Math.max(cap, 2);
+  }
+
+  ByteBuffer[] allocate(int cap) {
+    int perPage = 1 << pageShift;
+    int n = (cap + perPage - 1) >>> pageShift;
+    ByteBuffer tab[] = new ByteBuffer[n];
+    for (int p = 0; p < n; p++)
+      tab[p] = allocatePage(p, Math.min(perPage, cap - (p << pageShift)) * slotSize);
+    capacity = cap;
+    mask = cap - 1;
+    threshold = (cap >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY - 1 : (int) (cap * loadFactor);
+    return tab;
+  }
+
+  ByteBuffer allocatePage(int index, int bytes) {
+    return ByteBuffer.allocateDirect(bytes);
+  }
+
+  // called before every put or remove touches a slot
+  void beforeWrite() {
+  }
+
+  static void freeBuffer(ByteBuffer buffer) {
+    if (INVOKE_CLEANER == null || !buffer.isDirect())
+      return;
+    try {
+      INVOKE_CLEANER.invoke(UNSAFE, buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // already released, or a slice, leave it to the GC
+    }
+  }
+
+  public final int size() {
+    return size;
+  }
+
+  public final boolean isEmpty() {
+    return size == 0;
+  }
+
+  // bytes of native memory held by the table
+  public long offHeapBytes() {
+    return (long) capacity * slotSize;
+  }
+
+  private ByteBuffer page(int slot) {
+    return pages[slot >>> pageShift];
+  }
+
+  private int offset(int slot) {
+    return (slot & pageMask) * slotSize;
+  }
+
+  private void checkOpen() {
+    if (pages == null)
+      throw new IllegalStateException("map is closed");
+  }
+
+  private void checkKey(byte[] key) {
+    checkOpen();
+    if (key.length != keySize)
+      throw new IllegalArgumentException("key should be " + keySize + " bytes");
+  }
+
+  // slot holding key, or -(insertion slot + 1) when key is absent
+  private int find(byte[] key, int h) {
+    int m = mask, i = h & m, tag;
+    while ((tag = page(i).getInt(offset(i))) != EMPTY) {
+      if (tag == h && keyEquals(page(i), offset(i) + HASH_BYTES, key))
+        return i;
+      i = (i + 1) & m;
+    }
+    return -(i + 1);
+  }
+
+  private boolean keyEquals(ByteBuffer buf, int off, byte[] key) {
+    int i = 0, n = keySize;
+    for (; i + 8 <= n; i += 8) {
+      if (buf.getLong(off + i) != (long) LONGS.get(key, i))
+        return false;
+    }
+    for (; i < n; i++) {
+      if (buf.get(off + i) != key[i])
+        return false;
+    }
+    return true;
+  }
+
+  public boolean containsKey(byte[] key) {
+    checkKey(key);
+    return find(key, hash(key)) >= 0;
+  }
+
+  // copies the value of key into out, returns false when key is absent
+  public boolean get(byte[] key, byte[] out) {
+    checkKey(key);
+    int i = find(key, hash(key));
+    if (i < 0)
+      return false;
+    page(i).get(offset(i) + HASH_BYTES + keySize, out, 0, valueSize);
+    return true;
+  }
+
+  // returns true when an existing value was replaced
+  public boolean put(byte[] key, byte[] value) {
+    checkKey(key);
+    if (value.length != valueSize)
+      throw new IllegalArgumentException("value should be " + valueSize + " bytes");
+    beforeWrite();
+    int h = hash(key), i = find(key, h);
+    if (i >= 0) {
+      page(i).put(offset(i) + HASH_BYTES + keySize, value, 0, valueSize);
+      return true;
+    }
+    // grow before the insert, so a map that cannot grow is left untouched
+    if (size >= threshold) {
+      resize();
+      i = find(key, h);
+    }
+    i = -i - 1;
+    ByteBuffer buf = page(i);
+    int off = offset(i);
+    buf.putInt(off, h);
+    buf.put(off + HASH_BYTES, key, 0, keySize);
+    buf.put(off + HASH_BYTES + keySize, value, 0, valueSize);
+    ++size;
+    return false;
+  }
+
+  public boolean remove(byte[] key) {
+    checkKey(key);
+    int i = find(key, hash(key));
+    if (i < 0)
+      return false;
+    beforeWrite();
+    shiftSlots(i);
+    --size;
+    return true;
+  }
+
+  // backward shift deletion, keeps probe sequences intact without tombstones
+  private void shiftSlots(int pos) {
+    int m = mask, last, slot, tag;
+    for (;;) {
+      pos = ((last = pos) + 1) & m;
+      for (;;) {
+        if ((tag = page(pos).getInt(offset(pos))) == EMPTY) {
+          page(last).putInt(offset(last), EMPTY);
+          return;
+        }
+        slot = tag & m;
+        if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos))
+          break;
+        pos = (pos + 1) & m;
+      }
+      page(last).put(offset(last), page(pos), offset(pos), slotSize);
+    }
+  }
+
+  void resize() {
+    ByteBuffer oldPages[] = pages;
+    int oldCap = capacity;
+    if (oldCap >= MAXIMUM_CAPACITY) {
+      if (size >= MAXIMUM_CAPACITY - 1)
+        throw new IllegalStateException("map is full");
+      threshold = MAXIMUM_CAPACITY - 1;
+      return;
+    }
+    ByteBuffer tab[] = pages = allocate(oldCap << 1);
+    int m = mask;
+    for (int j = 0; j < oldCap; ++j) {
+      ByteBuffer src = oldPages[j >>> pageShift];
+      int srcOff = (j & pageMask) * slotSize, tag;
+      if ((tag = src.getInt(srcOff)) != EMPTY) {
+        // the stored hash places the slot, the key is never rehashed
+        int i = tag & m;
+        while (tab[i >>> pageShift].getInt(offset(i)) != EMPTY)
+          i = (i + 1) & m;
+        tab[i >>> pageShift].put(offset(i), src, srcOff, slotSize);
+      }
+    }
+    for (ByteBuffer p : oldPages)
+      freeBuffer(p);
+  }
+
+  @Override
+  public void close() {
+    ByteBuffer tab[] = pages;
+    if (tab == null)
+      return;
+    pages = null;
+    size = 0;
+    for (ByteBuffer p : tab)
+      freeBuffer(p);
+  }
+
+  @Override
+  public String toString() {
+    return "OffHeapMyHashMap{size=" + size + ", capacity=" + capacity + ", bytes=" + offHeapBytes() + "}";
+  }
+
+}
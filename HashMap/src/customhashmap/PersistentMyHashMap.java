@@ -0,0 +1,463 @@
+package customhashmap;
+
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+// Immutable map on a hash array mapped trie, laid out as in CHAMP. Every put
+// or remove returns a new version that shares all of the trie with the old
+// one except the nodes on the path to the key, at most 8 of them, so keeping
+// an old version around, as a snapshot for readers, costs nothing and
+// taking it costs a field read. A node holds a 32-bit bitmap of the hash
+// fragments that have a mapping inline and one of those that have a
+// subnode, with the key, value pairs at the front of its array and the
+// subnodes at its back, and keys whose 32-bit hashes are all equal end up
+// together in a collision node at the bottom.
+// A writer that keeps a live map and hands out snapshots would publish each
+// version through a volatile field or an AtomicReference, which readers
+// then take as they are while the writer goes on.
+// Bulk loads go through asTransient(): a Transient owns the nodes it
+// creates and updates them in place, copying only the nodes it shares with
+// versions made before, until persistent() hands them all over to an
+// immutable version. A Transient is for one thread and is unusable after
+// persistent().
+public final class PersistentMyHashMap<K, V> {
+
+  static final int BITS = 5, MASK = (1 << BITS) - 1, MAX_SHIFT = 30;
+  static final Object NOT_FOUND = new Object();
+  static final PersistentMyHashMap<?, ?> EMPTY = new PersistentMyHashMap<>(0, new BitmapNode(null, 0, 0, new Object[0]));
+
+  final int size;
+  final Node root;
+
+  private PersistentMyHashMap(int size, Node root) {
+    this.size = size;
+    this.root = root;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <K, V> PersistentMyHashMap<K, V> empty() {
+    return (PersistentMyHashMap<K, V>) EMPTY;
+  }
+
+  public static <K, V> PersistentMyHashMap<K, V> of(MyHashMap<? extends K, ? extends V> m) {
+    Transient<K, V> t = PersistentMyHashMap.<K, V>empty().asTransient();
+    m.forEach(t::put);
+    return t.persistent();
+  }
+
+  static boolean eq(Object k, Object x) {
+    return k == x || (k != null && k.equals(x));
+  }
+
+  static int fragment(int h, int shift) {
+    return (h >>> shift) & MASK;
+  }
+
+  // what a put or remove did, for the caller's size and result
+  static final class Change {
+    boolean added, found;
+    Object old;
+
+    void reset() {
+      added = found = false;
+      old = null;
+    }
+  }
+
+  // A node belongs to the Transient whose edit token it carries, which may
+  // update it in place, and is immutable for everyone else. Nodes of
+  // persistent versions carry null, or the token of a finished Transient.
+  abstract static class Node {
+    Object edit;
+    Object array[];
+
+    Node(Object edit, Object array[]) {
+      this.edit = edit;
+      this.array = array;
+    }
+
+    final boolean ownedBy(Object edit) {
+      return edit != null && this.edit == edit;
+    }
+
+    // these return this node when nothing changed
+    abstract Node put(Object edit, int shift, int h, Object k, Object v, Change c);
+
+    abstract Node remove(Object edit, int shift, int h, Object k, Change c);
+
+    // a node with a single mapping and no subnodes, which its parent inlines
+    abstract boolean single();
+
+    abstract void forEach(BiConsumer<Object, Object> action);
+  }
+
+  static final class BitmapNode extends Node {
+    int dataMap, nodeMap;
+
+    BitmapNode(Object edit, int dataMap, int nodeMap, Object array[]) {
+      super(edit, array);
+      this.dataMap = dataMap;
+      this.nodeMap = nodeMap;
+    }
+
+    // where the key of bit sits, counting from the front
+    final int dataIndex(int bit) {
+      return Integer.bitCount(dataMap & (bit - 1)) << 1;
+    }
+
+    // where the subnode of bit sits, counting from the back
+    final int nodeIndex(int bit) {
+      return array.length - 1 - Integer.bitCount(nodeMap & (bit - 1));
+    }
+
+    // this node with array[i] set to x, in place if edit owns it
+    BitmapNode with(Object edit, int i, Object x) {
+      BitmapNode n = ownedBy(edit) ? this : new BitmapNode(edit, dataMap, nodeMap, array.clone());
+      n.array[i] = x;
+      return n;
+    }
+
+    BitmapNode with(Object edit, int dataMap, int nodeMap, Object array[]) {
+      if (!ownedBy(edit))
+        return new BitmapNode(edit, dataMap, nodeMap, array);
+      this.dataMap = dataMap;
+      this.nodeMap = nodeMap;
+      this.array = array;
+      return this;
+    }
+
+    @Override
+    Node put(Object edit, int shift, int h, Object k, Object v, Change c) {
+      int bit = 1 << fragment(h, shift);
+      if ((dataMap & bit) != 0) {
+        int i = dataIndex(bit);
+        Object x = array[i], old = array[i + 1];
+        if (eq(k, x)) {
+          c.found = true;
+          c.old = old;
+          return (old == v) ? this : with(edit, i + 1, v);
+        }
+        // the two mappings move down into a subnode of their own
+        c.added = true;
+        Node sub = merge(edit, shift + BITS, MyHashMap.hash(x), x, old, h, k, v);
+        Object a[] = new Object[array.length - 1];
+        int at = a.length - 1 - Integer.bitCount(nodeMap & (bit - 1));
+        System.arraycopy(array, 0, a, 0, i);
+        System.arraycopy(array, i + 2, a, i, at - i);
+        a[at] = sub;
+        System.arraycopy(array, at + 2, a, at + 1, array.length - at - 2);
+        return with(edit, dataMap ^ bit, nodeMap | bit, a);
+      }
+      if ((nodeMap & bit) != 0) {
+        int j = nodeIndex(bit);
+        Node child = (Node) array[j], sub = child.put(edit, shift + BITS, h, k, v, c);
+        return (sub == child) ? this : with(edit, j, sub);
+      }
+      c.added = true;
+      int i = dataIndex(bit);
+      Object a[] = new Object[array.length + 2];
+      System.arraycopy(array, 0, a, 0, i);
+      a[i] = k;
+      a[i + 1] = v;
+      System.arraycopy(array, i, a, i + 2, array.length - i);
+      return with(edit, dataMap | bit, nodeMap, a);
+    }
+
+    @Override
+    Node remove(Object edit, int shift, int h, Object k, Change c) {
+      int bit = 1 << fragment(h, shift);
+      if ((dataMap & bit) != 0) {
+        int i = dataIndex(bit);
+        if (!eq(k, array[i]))
+          return this;
+        c.found = true;
+        c.old = array[i + 1];
+        Object a[] = new Object[array.length - 2];
+        System.arraycopy(array, 0, a, 0, i);
+        System.arraycopy(array, i + 2, a, i, a.length - i);
+        return with(edit, dataMap ^ bit, nodeMap, a);
+      }
+      if ((nodeMap & bit) != 0) {
+        int j = nodeIndex(bit);
+        Node child = (Node) array[j], sub = child.remove(edit, shift + BITS, h, k, c);
+        if (sub == child)
+          return this;
+        if (!sub.single())
+          return with(edit, j, sub);
+        // the subnode's last mapping moves up here
+        int i = dataIndex(bit);
+        Object a[] = new Object[array.length + 1];
+        System.arraycopy(array, 0, a, 0, i);
+        a[i] = sub.array[0];
+        a[i + 1] = sub.array[1];
+        System.arraycopy(array, i, a, i + 2, j - i);
+        System.arraycopy(array, j + 1, a, j + 2, array.length - j - 1);
+        return with(edit, dataMap | bit, nodeMap ^ bit, a);
+      }
+      return this;
+    }
+
+    @Override
+    boolean single() {
+      return nodeMap == 0 && array.length == 2;
+    }
+
+    @Override
+    void forEach(BiConsumer<Object, Object> action) {
+      int data = Integer.bitCount(dataMap) << 1;
+      for (int i = 0; i < data; i += 2)
+        action.accept(array[i], array[i + 1]);
+      for (int j = array.length - 1; j >= data; --j)
+        ((Node) array[j]).forEach(action);
+    }
+  }
+
+  // mappings whose keys have equal 32-bit hashes, in a flat array
+  static final class CollisionNode extends Node {
+    final int hash;
+
+    CollisionNode(Object edit, int hash, Object array[]) {
+      super(edit, array);
+      this.hash = hash;
+    }
+
+    int indexOf(Object k) {
+      for (int i = 0; i < array.length; i += 2)
+        if (eq(k, array[i]))
+          return i;
+      return -1;
+    }
+
+    @Override
+    Node put(Object edit, int shift, int h, Object k, Object v, Change c) {
+      int i = indexOf(k);
+      if (i >= 0) {
+        c.found = true;
+        Object old = c.old = array[i + 1];
+        if (old == v)
+          return this;
+        CollisionNode n = ownedBy(edit) ? this : new CollisionNode(edit, hash, array.clone());
+        n.array[i + 1] = v;
+        return n;
+      }
+      c.added = true;
+      Object a[] = new Object[array.length + 2];
+      System.arraycopy(array, 0, a, 0, array.length);
+      a[array.length] = k;
+      a[array.length + 1] = v;
+      if (!ownedBy(edit))
+        return new CollisionNode(edit, hash, a);
+      array = a;
+      return this;
+    }
+
+    @Override
+    Node remove(Object edit, int shift, int h, Object k, Change c) {
+      int i = indexOf(k);
+      if (i < 0)
+        return this;
+      c.found = true;
+      c.old = array[i + 1];
+      Object a[] = new Object[array.length - 2];
+      System.arraycopy(array, 0, a, 0, i);
+      System.arraycopy(array, i + 2, a, i, a.length - i);
+      if (!ownedBy(edit))
+        return new CollisionNode(edit, hash, a);
+      array = a;
+      return this;
+    }
+
+    @Override
+    boolean single() {
+      return array.length == 2;
+    }
+
+    @Override
+    void forEach(BiConsumer<Object, Object> action) {
+      for (int i = 0; i < array.length; i += 2)
+        action.accept(array[i], array[i + 1]);
+    }
+  }
+
+  // a node holding two mappings of distinct keys, nested as deep as their
+  // hashes agree
+  static Node merge(Object edit, int shift, int h1, Object k1, Object v1, int h2, Object k2, Object v2) {
+    if (shift > MAX_SHIFT)
+      return new CollisionNode(edit, h1, new Object[] { k1, v1, k2, v2 });
+    int f1 = fragment(h1, shift), f2 = fragment(h2, shift);
+    if (f1 == f2)
+      return new BitmapNode(edit, 0, 1 << f1, new Object[] { merge(edit, shift + BITS, h1, k1, v1, h2, k2, v2) });
+    Object a[] = (f1 < f2) ? new Object[] { k1, v1, k2, v2 } : new Object[] { k2, v2, k1, v1 };
+    return new BitmapNode(edit, (1 << f1) | (1 << f2), 0, a);
+  }
+
+  // the value of k under root, or NOT_FOUND, walked in a loop rather than
+  // by a call per level
+  static Object find(Node root, Object k) {
+    int h = MyHashMap.hash(k);
+    Node n = root;
+    for (int shift = 0;; shift += BITS) {
+      if (!(n instanceof BitmapNode)) {
+        int i = ((CollisionNode) n).indexOf(k);
+        return (i < 0) ? NOT_FOUND : n.array[i + 1];
+      }
+      BitmapNode b = (BitmapNode) n;
+      int bit = 1 << fragment(h, shift);
+      if ((b.dataMap & bit) != 0) {
+        int i = b.dataIndex(bit);
+        return eq(k, b.array[i]) ? b.array[i + 1] : NOT_FOUND;
+      }
+      if ((b.nodeMap & bit) == 0)
+        return NOT_FOUND;
+      n = (Node) b.array[b.nodeIndex(bit)];
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public V get(K k) {
+    return getOrDefault(k, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  public V getOrDefault(K k, V defaultValue) {
+    Object v = find(root, k);
+    return (v == NOT_FOUND) ? defaultValue : (V) v;
+  }
+
+  public boolean containsKey(K k) {
+    return find(root, k) != NOT_FOUND;
+  }
+
+  // a version with k mapped to v, this one when it already was
+  public PersistentMyHashMap<K, V> put(K k, V v) {
+    Change c = new Change();
+    Node r = root.put(null, 0, MyHashMap.hash(k), k, v, c);
+    return (r == root) ? this : new PersistentMyHashMap<>(c.added ? size + 1 : size, r);
+  }
+
+  // a version without k, this one when it had no k
+  public PersistentMyHashMap<K, V> remove(K k) {
+    Change c = new Change();
+    Node r = root.remove(null, 0, MyHashMap.hash(k), k, c);
+    return (r == root) ? this : new PersistentMyHashMap<>(size - 1, r);
+  }
+
+  @SuppressWarnings("unchecked")
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    Objects.requireNonNull(action);
+    root.forEach((BiConsumer<Object, Object>) action);
+  }
+
+  // a mutable copy
+  public MyHashMap<K, V> toMyHashMap() {
+    MyHashMap<K, V> m = new MyHashMap<>(Math.max(size, 1));
+    forEach(m::put);
+    return m;
+  }
+
+  // a mutable map starting out as this version, for batches of updates
+  public Transient<K, V> asTransient() {
+    return new Transient<>(size, root);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder("{");
+    forEach((k, v) -> {
+      if (b.length() > 1)
+        b.append(", ");
+      b.append(k).append('=').append(v);
+    });
+    return b.append('}').toString();
+  }
+
+  // The mutable side, with the get and put of MyHashMap.
+  public static final class Transient<K, V> {
+    // the token of the nodes this Transient may update, null once done
+    Object edit = new Object();
+    Node root;
+    int size;
+    final Change change = new Change();
+
+    Transient(int size, Node root) {
+      this.size = size;
+      this.root = root;
+    }
+
+    private void ensureEditable() {
+      if (edit == null) {
+        throw new IllegalStateException("transient used after persistent()");
+      }
+    }
+
+    public int size() {
+      ensureEditable();
+      return size;
+    }
+
+    public boolean isEmpty() {
+      return size() == 0;
+    }
+
+    public V get(K k) {
+      return getOrDefault(k, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(K k, V defaultValue) {
+      ensureEditable();
+      Object v = find(root, k);
+      return (v == NOT_FOUND) ? defaultValue : (V) v;
+    }
+
+    public boolean containsKey(K k) {
+      ensureEditable();
+      return find(root, k) != NOT_FOUND;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(K k, V v) {
+      ensureEditable();
+      Change c = change;
+      c.reset();
+      root = root.put(edit, 0, MyHashMap.hash(k), k, v, c);
+      if (c.added)
+        ++size;
+      return (V) c.old;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(K k) {
+      ensureEditable();
+      Change c = change;
+      c.reset();
+      root = root.remove(edit, 0, MyHashMap.hash(k), k, c);
+      if (c.found)
+        --size;
+      return (V) c.old;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+      ensureEditable();
+      Objects.requireNonNull(action);
+      root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    // the current contents as an immutable version, after which this
+    // Transient no longer updates anything
+    public PersistentMyHashMap<K, V> persistent() {
+      ensureEditable();
+      edit = null;
+      return new PersistentMyHashMap<>(size, root);
+    }
+  }
+
+}
@@ -0,0 +1,82 @@
+package customhashmap;
+
+import java.security.SecureRandom;
+
+// Keyed hashing for maps with seeded hashing on. MyHashMap.hash() is a pure
+// function of hashCode(), so anyone who can choose the keys can choose
+// colliding ones, for Strings as easily as "Aa" and "BB". Here a seed drawn
+// from SecureRandom per map goes into every hash. By default a key's
+// hashCode() and the seed run through murmur3's 64-bit finalizer, so keys
+// with distinct hashCodes land in unpredictable buckets at the cost of a few
+// multiplications. Keys with equal hashCodes still collide, so once a map
+// sees a String bucket or probe sequence long enough to suggest an attack
+// it switches to strong hashing and rehashes: Strings are then hashed from
+// their chars, 8 at a time, by a wyhash-style multiply-fold keyed with the
+// seed, which never looks at String.hashCode() but reads every char on
+// every lookup. Ordinary traffic never pays for that.
+// byte[] keys compare by identity, so their identity hash is not steerable
+// and they take the finalizer like any other object.
+final class SeededHash {
+
+  // wyhash's primes
+  static final long P0 = 0xa0761d6478bd642fL, P1 = 0xe7037ed1a0b428dbL, P2 = 0x8ebc6af09c88c6e3L;
+
+  private static final SecureRandom SEEDS = new SecureRandom();
+
+  private SeededHash() {
+  }
+
+  // a fresh seed, never 0 which means unseeded
+  static long newSeed() {
+    long seed;
+    synchronized (SEEDS) {
+      while ((seed = SEEDS.nextLong()) == 0)
+        ;
+    }
+    return seed;
+  }
+
+  static int hash(Object k, long seed, boolean strong) {
+    if (strong && k instanceof String)
+      return hashString((String) k, seed);
+    long h = (k == null) ? 0 : k.hashCode();
+    return (int) fmix64(h ^ seed);
+  }
+
+  // folds the 128-bit product, a multiplication both of whose operands the
+  // caller cannot zero without knowing the seed
+  static long mum(long a, long b) {
+    return Math.multiplyHigh(a, b) ^ (a * b);
+  }
+
+  // 8 chars per multiplication, as two words each blinded by a secret
+  static int hashString(String s, long seed) {
+    int n = s.length(), i = 0;
+    long h = seed ^ P0, key = seed * P1;
+    for (; i + 8 <= n; i += 8)
+      h = mum(h ^ chars(s, i, 4), key ^ chars(s, i + 4, 4));
+    if (i < n) {
+      int rest = n - i, lo = Math.min(rest, 4);
+      h = mum(h ^ chars(s, i, lo), key ^ chars(s, i + lo, rest - lo));
+    }
+    h = mum(h ^ n, P2);
+    return (int) (h ^ (h >>> 32));
+  }
+
+  // count chars from i packed into a long, the first one lowest
+  private static long chars(String s, int i, int count) {
+    long w = 0;
+    for (int j = count - 1; j >= 0; --j)
+      w = (w << 16) | s.charAt(i + j);
+    return w;
+  }
+
+  static long fmix64(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  }
+
+}
@@ -0,0 +1,335 @@
+package customhashmap;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+// Counts keys from many threads without sharing a map between them. Keys are
+// routed by hash to one of n shards, each a plain MyHashMap owned by its own
+// thread, which is the only one ever to touch it. Producers batch the keys of
+// every shard and hand full batches over through the shard's bounded queue,
+// blocking while it is full, so a slow shard pushes back on ingest instead of
+// piling up. Queries are sent down the same queues and answered by the
+// owners, after every batch flushed before the query was made. Ingest scales
+// with the shards as long as there are cores for them and the producers.
+// shutdown() stops the owners, close() does the same for try-with-resources
+// without throwing InterruptedException.
+public class ShardedCounter<K> implements AutoCloseable {
+
+  static final int NCPU = Runtime.getRuntime().availableProcessors();
+  // keys a producer gathers for a shard before queueing them
+  static final int BATCH_SIZE = 512;
+  // batches a shard's queue holds before producers block
+  static final int QUEUE_BATCHES = 16;
+
+  static final class Count {
+    long n;
+  }
+
+  static final Function<Object, Count> NEW_COUNT = k -> new Count();
+
+  // runs on the owner thread of a shard
+  abstract static class Task<K> {
+    abstract void run(Shard<K> s);
+  }
+
+  static final class Batch<K> extends Task<K> {
+    final Object keys[] = new Object[BATCH_SIZE];
+    final long counts[] = new long[BATCH_SIZE];
+    int size;
+
+    @SuppressWarnings("unchecked")
+    @Override
+    void run(Shard<K> s) {
+      MyHashMap<K, Count> m = s.counts;
+      for (int i = 0; i < size; ++i)
+        m.computeIfAbsent((K) keys[i], NEW_COUNT).n += counts[i];
+    }
+  }
+
+  static final class Query<K, R> extends Task<K> {
+    final Function<MyHashMap<K, Count>, R> function;
+    final CompletableFuture<R> result = new CompletableFuture<>();
+
+    Query(Function<MyHashMap<K, Count>, R> function) {
+      this.function = function;
+    }
+
+    @Override
+    void run(Shard<K> s) {
+      try {
+        result.complete(function.apply(s.counts));
+      } catch (RuntimeException e) {
+        result.completeExceptionally(e);
+      }
+    }
+  }
+
+  // ends the owner thread
+  static final class Stop<K> extends Task<K> {
+    @Override
+    void run(Shard<K> s) {
+      s.stopped = true;
+    }
+  }
+
+  static final class Shard<K> extends Thread {
+    final BlockingQueue<Task<K>> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+    final MyHashMap<K, Count> counts = new MyHashMap<>();
+    boolean stopped;
+    // the first failure of a batch, the batches after it are still counted
+    volatile RuntimeException failure;
+
+    Shard(String name) {
+      super(name);
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (!stopped) {
+        Task<K> t;
+        try {
+          t = queue.take();
+        } catch (InterruptedException e) {
+          // only shutdown() stops a shard, a stray interrupt would lose batches
+          continue;
+        }
+        try {
+          t.run(this);
+        } catch (RuntimeException e) {
+          if (failure == null)
+            failure = e;
+        }
+      }
+    }
+  }
+
+  final Shard<K> shards[];
+  // send() holds the read lock from checking closed until its task is
+  // queued, shutdown() the write lock while it closes and queues the Stops,
+  // so nothing is ever queued behind a Stop where no owner would take it
+  final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+  // guarded by closeLock
+  boolean closed;
+  int stopsQueued;
+
+  public ShardedCounter() {
+    this(NCPU);
+  }
+
+  public ShardedCounter(int shards) {
+    if (shards <= 0) {
+      throw new IllegalArgumentException("shards should be greater than 0");
+    }
+    @SuppressWarnings("unchecked")
+    Shard<K> s[] = (Shard<K>[]) new Shard<?>[shards];
+    this.shards = s;
+    for (int i = 0; i < shards; ++i) {
+      this.shards[i] = new Shard<>("ShardedCounter-" + i);
+      this.shards[i].start();
+    }
+  }
+
+  public int shards() {
+    return shards.length;
+  }
+
+  // the shard of k, spread over the shards by the high bits of a multiply
+  final int shardOf(Object k) {
+    return (int) (((MyHashMap.hash(k) * 0x9e3779b9) & 0xffffffffL) * shards.length >>> 32);
+  }
+
+  // A producer for the calling thread. It is not thread safe, every thread
+  // that counts keys takes its own, and its counts are only seen by the
+  // queries once flushed.
+  public Producer producer() {
+    return new Producer();
+  }
+
+  public final class Producer implements AutoCloseable {
+    @SuppressWarnings("unchecked")
+    final Batch<K> batches[] = (Batch<K>[]) new Batch<?>[shards.length];
+
+    Producer() {
+      for (int i = 0; i < batches.length; ++i)
+        batches[i] = new Batch<>();
+    }
+
+    public void add(K k) throws InterruptedException {
+      add(k, 1);
+    }
+
+    public void add(K k, long n) throws InterruptedException {
+      int i = shardOf(k);
+      Batch<K> b = batches[i];
+      b.keys[b.size] = k;
+      b.counts[b.size] = n;
+      if (++b.size == BATCH_SIZE) {
+        send(i, b);
+        batches[i] = new Batch<>();
+      }
+    }
+
+    // queues the partial batches, blocking while a queue is full
+    public void flush() throws InterruptedException {
+      for (int i = 0; i < batches.length; ++i) {
+        if (batches[i].size > 0) {
+          send(i, batches[i]);
+          batches[i] = new Batch<>();
+        }
+      }
+    }
+
+    // Flushes like flush(), except that an interrupt ends it without being
+    // thrown: the batches not queued by then are dropped and the thread's
+    // interrupt flag is set again.
+    @Override
+    public void close() {
+      try {
+        flush();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  // throws IllegalStateException once shut down, never blocks behind a Stop
+  private void send(int shard, Task<K> t) throws InterruptedException {
+    Lock l = closeLock.readLock();
+    l.lockInterruptibly();
+    try {
+      if (closed)
+        throw new IllegalStateException("counter is closed");
+      shards[shard].queue.put(t);
+    } finally {
+      l.unlock();
+    }
+  }
+
+  // applies function to every shard's counts on its owner and collects the results
+  private <R> List<R> ask(Function<MyHashMap<K, Count>, R> function) throws InterruptedException {
+    List<Query<K, R>> queries = new ArrayList<>(shards.length);
+    for (int i = 0; i < shards.length; ++i) {
+      Query<K, R> q = new Query<>(function);
+      send(i, q);
+      queries.add(q);
+    }
+    List<R> results = new ArrayList<>(shards.length);
+    for (int i = 0; i < shards.length; ++i) {
+      try {
+        results.add(queries.get(i).result.get());
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("shard " + i + " failed", e.getCause());
+      }
+      RuntimeException failure = shards[i].failure;
+      if (failure != null)
+        throw new IllegalStateException("shard " + i + " failed", failure);
+    }
+    return results;
+  }
+
+  public long get(K k) throws InterruptedException {
+    int i = shardOf(k);
+    Query<K, Long> q = new Query<>(m -> {
+      Count c = m.get(k);
+      return (c == null) ? 0L : c.n;
+    });
+    send(i, q);
+    try {
+      return q.result.get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("shard " + i + " failed", e.getCause());
+    }
+  }
+
+  // A copy of every count. Each shard copies its own map, the shards hold
+  // disjoint keys, so merging the copies is just putting them together.
+  public MyHashMap<K, Long> snapshot() throws InterruptedException {
+    List<MyHashMap<K, Long>> copies = ask(m -> {
+      MyHashMap<K, Long> copy = new MyHashMap<>(Math.max(m.size(), 1));
+      m.forEach((k, c) -> copy.put(k, c.n));
+      return copy;
+    });
+    int n = 0;
+    for (MyHashMap<K, Long> c : copies)
+      n += c.size();
+    MyHashMap<K, Long> all = new MyHashMap<>(Math.max(n, 1));
+    for (MyHashMap<K, Long> c : copies)
+      all.putAll(c);
+    return all;
+  }
+
+  // The k largest counts, largest first, ties in no particular order. Every
+  // shard picks its own k with a heap, and as the shards are disjoint the
+  // overall top k is among those.
+  public List<Map.Entry<K, Long>> topK(int k) throws InterruptedException {
+    if (k < 0) {
+      throw new IllegalArgumentException("k should not be negative");
+    }
+    Comparator<Map.Entry<K, Long>> byCount = Map.Entry.comparingByValue();
+    List<List<Map.Entry<K, Long>>> tops = ask(m -> {
+      PriorityQueue<Map.Entry<K, Long>> heap = new PriorityQueue<>(byCount);
+      m.forEach((key, c) -> offer(heap, k, key, c.n));
+      return new ArrayList<>(heap);
+    });
+    PriorityQueue<Map.Entry<K, Long>> heap = new PriorityQueue<>(byCount);
+    for (List<Map.Entry<K, Long>> top : tops)
+      for (Map.Entry<K, Long> e : top)
+        offer(heap, k, e.getKey(), e.getValue());
+    List<Map.Entry<K, Long>> result = new ArrayList<>(heap);
+    result.sort(byCount.reversed());
+    return result;
+  }
+
+  // keeps the k largest counts in the min-heap
+  static <K> void offer(PriorityQueue<Map.Entry<K, Long>> heap, int k, K key, long n) {
+    if (heap.size() < k)
+      heap.add(new AbstractMap.SimpleImmutableEntry<>(key, n));
+    else if (k > 0 && heap.peek().getValue() < n) {
+      heap.poll();
+      heap.add(new AbstractMap.SimpleImmutableEntry<>(key, n));
+    }
+  }
+
+  // Stops the owner threads once they have counted what was queued before
+  // and waits for them. Batches not flushed by then are lost, later calls
+  // throw IllegalStateException. An interrupted shutdown can be called again
+  // to finish.
+  public void shutdown() throws InterruptedException {
+    Lock l = closeLock.writeLock();
+    l.lockInterruptibly();
+    try {
+      closed = true;
+      for (; stopsQueued < shards.length; ++stopsQueued)
+        shards[stopsQueued].queue.put(new Stop<>());
+    } finally {
+      l.unlock();
+    }
+    for (Shard<K> s : shards)
+      s.join();
+  }
+
+  // shutdown(), except that an interrupt ends it without being thrown and
+  // is set on the thread again. Owners whose Stop was queued still stop on
+  // their own, and all of them are daemon threads.
+  @Override
+  public void close() {
+    try {
+      shutdown();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,561 @@
+package customhashmap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.ToIntBiFunction;
+
+// Map for aggregations that may outgrow the heap. Keys are split by their
+// hash into PARTITIONS partitions, each a MyHashMap, and every entry is
+// weighed against a byte budget, ENTRY_BYTES apiece unless a weigher says
+// otherwise. Once the budget is exceeded the least recently used partitions
+// are written to their temp file as a run sorted by hash and emptied, until
+// a quarter of the budget is free again. Writes never read the disk: a write
+// to a spilled partition lands in its empty map as a partial result, which
+// lookups and forEach() fold onto the runs, oldest first. So merge() applies
+// the combiner to partial results and the combiner must be associative, as
+// sums, counts, minimums and concatenations are. A partition with more than
+// MAX_RUNS runs has them merged into one, so a lookup reads at most
+// MAX_RUNS + 1 index blocks. Null values are not allowed. Like MyHashMap it
+// is not thread safe, and close() deletes the temp files.
+public class SpillableMyHashMap<K, V> implements Closeable {
+
+  static final int PARTITION_BITS = 6, PARTITIONS = 1 << PARTITION_BITS;
+  // rough heap cost of a chained entry with a small boxed key and value
+  static final int ENTRY_BYTES = 64;
+  static final int MAX_RUNS = 8;
+  // every INDEX_INTERVAL-th record of a run is kept in its index
+  static final int INDEX_INTERVAL = 64;
+  static final int LOOKUP_BUFFER_BYTES = 1 << 13, MERGE_BUFFER_BYTES = 1 << 16;
+  // on top of the snapshot's NULL_KEY and NULL_VALUE, marks a record that
+  // replaces what the older runs hold instead of adding to it
+  static final int RESET = 4;
+
+  // a put() or remove(), value null, over a partition that has runs
+  static final class Reset {
+    final Object value;
+
+    Reset(Object value) {
+      this.value = value;
+    }
+  }
+
+  static final Reset REMOVED = new Reset(null);
+
+  // INDEX_INTERVAL-th hashes and their file offsets, the first one at start
+  static final class Run {
+    final long start, end;
+    final int count, hashes[];
+    final long offsets[];
+
+    Run(long start, long end, int count, int hashes[], long offsets[]) {
+      this.start = start;
+      this.end = end;
+      this.count = count;
+      this.hashes = hashes;
+      this.offsets = offsets;
+    }
+  }
+
+  final long maxBytes;
+  final MyHashMapSnapshot.Codec<K> keyCodec;
+  final MyHashMapSnapshot.Codec<V> valueCodec;
+  final BinaryOperator<V> combiner;
+  // null when every entry weighs ENTRY_BYTES
+  final ToIntBiFunction<? super K, ? super V> weigher;
+  final Path dir;
+  // values are V, or Reset where the partition has runs; null once closed
+  MyHashMap<K, Object> mem[];
+  final long bytes[] = new long[PARTITIONS], lastUsed[] = new long[PARTITIONS];
+  final FileChannel files[] = new FileChannel[PARTITIONS];
+  // oldest first, null where the partition has never spilled
+  @SuppressWarnings("unchecked")
+  final List<Run> runs[] = (List<Run>[]) new List<?>[PARTITIONS];
+  long totalBytes, clock, spills;
+  // weight change of the last write, set by the remapping functions
+  long delta;
+  // buffers of the one RunWriter and the one lookup RunCursor in use at a
+  // time, kept for the next so spilling and reading runs back allocate nothing
+  ByteBuffer writeBuffer, lookupBuffer;
+
+  public SpillableMyHashMap(long maxBytes, MyHashMapSnapshot.Codec<K> keyCodec,
+      MyHashMapSnapshot.Codec<V> valueCodec, BinaryOperator<V> combiner) {
+    this(maxBytes, keyCodec, valueCodec, combiner, null, Paths.get(System.getProperty("java.io.tmpdir")));
+  }
+
+  // The weigher returns the bytes an entry holds on the heap and is called
+  // again whenever a value is replaced. Temp files are created in dir.
+  public SpillableMyHashMap(long maxBytes, MyHashMapSnapshot.Codec<K> keyCodec,
+      MyHashMapSnapshot.Codec<V> valueCodec, BinaryOperator<V> combiner,
+      ToIntBiFunction<? super K, ? super V> weigher, Path dir) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("byte budget should be greater than 0");
+    }
+    this.maxBytes = maxBytes;
+    this.keyCodec = Objects.requireNonNull(keyCodec);
+    this.valueCodec = Objects.requireNonNull(valueCodec);
+    this.combiner = Objects.requireNonNull(combiner);
+    this.weigher = weigher;
+    this.dir = Objects.requireNonNull(dir);
+    @SuppressWarnings("unchecked")
+    MyHashMap<K, Object> mem[] = (MyHashMap<K, Object>[]) new MyHashMap<?, ?>[PARTITIONS];
+    this.mem = mem;
+    for (int p = 0; p < PARTITIONS; ++p)
+      mem[p] = new MyHashMap<>();
+  }
+
+  static int partitionOf(int hash) {
+    return (hash * 0x9e3779b9) >>> (32 - PARTITION_BITS);
+  }
+
+  // the weight of k's entry holding v, a V or a Reset
+  @SuppressWarnings("unchecked")
+  final int weigh(K k, Object v) {
+    if (v instanceof Reset)
+      v = ((Reset) v).value;
+    if (weigher == null || v == null)
+      return ENTRY_BYTES;
+    int w = weigher.applyAsInt(k, (V) v);
+    if (w < 0)
+      throw new IllegalArgumentException("negative weight " + w + " for " + k);
+    return w;
+  }
+
+  // s with v folded onto it, v being a partial result unless flagged RESET
+  @SuppressWarnings("unchecked")
+  final Object fold(Object s, int flags, Object v) {
+    if ((flags & RESET) != 0 || s == null)
+      return v;
+    return combiner.apply((V) s, (V) v);
+  }
+
+  private MyHashMap<K, Object> touch(int p) {
+    if (mem == null)
+      throw new IllegalStateException("map is closed");
+    lastUsed[p] = ++clock;
+    return mem[p];
+  }
+
+  private void charge(int p, long d) {
+    bytes[p] += d;
+    totalBytes += d;
+    if (totalBytes > maxBytes)
+      spill();
+  }
+
+  // combines v into k's value, or maps k to v when it has none
+  public void merge(K k, V v) {
+    Objects.requireNonNull(v);
+    int p = partitionOf(MyHashMap.hash(k));
+    touch(p).compute(k, (key, old) -> {
+      Object nv = (old instanceof Reset) ? new Reset(fold(((Reset) old).value, 0, v)) : fold(old, 0, v);
+      delta = weigh(key, nv) - ((old == null) ? 0 : weigh(key, old));
+      return nv;
+    });
+    charge(p, delta);
+  }
+
+  public void put(K k, V v) {
+    Objects.requireNonNull(v);
+    int p = partitionOf(MyHashMap.hash(k));
+    Object nv = (runs[p] == null) ? v : new Reset(v);
+    Object old = touch(p).put(k, nv);
+    charge(p, weigh(k, nv) - ((old == null) ? 0 : weigh(k, old)));
+  }
+
+  public void remove(K k) {
+    int p = partitionOf(MyHashMap.hash(k));
+    MyHashMap<K, Object> m = touch(p);
+    if (runs[p] == null) {
+      Object old = m.remove(k);
+      if (old != null)
+        charge(p, -weigh(k, old));
+    } else {
+      Object old = m.put(k, REMOVED);
+      charge(p, ENTRY_BYTES - ((old == null) ? 0 : weigh(k, old)));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(K k) {
+    int hash = MyHashMap.hash(k), p = partitionOf(hash);
+    Object m = touch(p).get(k);
+    if (runs[p] == null || m instanceof Reset)
+      return (V) ((m instanceof Reset) ? ((Reset) m).value : m);
+    try {
+      Object s = null;
+      for (Run r : runs[p])
+        s = lookup(p, r, hash, k, s);
+      return (V) ((m == null) ? s : fold(s, 0, m));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public V getOrDefault(K k, V defaultValue) {
+    V v = get(k);
+    return (v == null) ? defaultValue : v;
+  }
+
+  public boolean containsKey(K k) {
+    return get(k) != null;
+  }
+
+  // Every mapping once, partition by partition, in no particular order. The
+  // spilled partitions are merged from their runs as they go, so this reads
+  // every temp file once and needs memory for a few buffers, not the runs.
+  @SuppressWarnings("unchecked")
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    Objects.requireNonNull(action);
+    for (int p = 0; p < PARTITIONS; ++p) {
+      MyHashMap<K, Object> m = touch(p);
+      if (runs[p] == null) {
+        m.forEach((k, v) -> action.accept(k, (V) v));
+        continue;
+      }
+      try {
+        mergeRuns(p, true, (hash, k, v) -> action.accept(k, v));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  // the estimated bytes held on the heap, at most the budget between calls
+  public long memoryBytes() {
+    return totalBytes;
+  }
+
+  // bytes in the temp files
+  public long diskBytes() {
+    long n = 0;
+    for (List<Run> rs : runs)
+      if (rs != null)
+        for (Run r : rs)
+          n += r.end - r.start;
+    return n;
+  }
+
+  // partitions written out so far, counting every time one spilled
+  public long spills() {
+    return spills;
+  }
+
+  // Spills the least recently used partitions until a quarter of the budget
+  // is free, so that an aggregation over the budget spills in large runs.
+  private void spill() {
+    long target = maxBytes - (maxBytes >>> 2);
+    while (totalBytes > target) {
+      int coldest = -1;
+      for (int p = 0; p < PARTITIONS; ++p)
+        if (bytes[p] > 0 && (coldest < 0 || lastUsed[p] < lastUsed[coldest]))
+          coldest = p;
+      if (coldest < 0)
+        return;
+      try {
+        spill(coldest);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  // writes partition p's map as a new run and empties it
+  @SuppressWarnings("unchecked")
+  private void spill(int p) throws IOException {
+    if (files[p] == null)
+      files[p] = newFile();
+    RunWriter w = new RunWriter(files[p]);
+    MemoryCursor c = new MemoryCursor(mem[p]);
+    for (c.advance(); !c.done; c.advance())
+      w.add(c.hash, c.flags, c.key, (V) c.value);
+    if (runs[p] == null)
+      runs[p] = new ArrayList<>();
+    runs[p].add(w.finish());
+    mem[p] = new MyHashMap<>();
+    totalBytes -= bytes[p];
+    bytes[p] = 0;
+    ++spills;
+    if (runs[p].size() > MAX_RUNS)
+      compact(p);
+  }
+
+  // merges partition p's runs into one, in a new file
+  private void compact(int p) throws IOException {
+    FileChannel f = newFile();
+    Run merged;
+    try {
+      RunWriter w = new RunWriter(f);
+      mergeRuns(p, false, (hash, k, v) -> w.add(hash, 0, k, v));
+      merged = w.finish();
+    } catch (IOException | RuntimeException e) {
+      f.close();
+      throw e;
+    }
+    files[p].close();
+    files[p] = f;
+    runs[p].clear();
+    runs[p].add(merged);
+  }
+
+  // deleted again when closed
+  private FileChannel newFile() throws IOException {
+    Path path = Files.createTempFile(dir, "myhashmap-spill-", ".run");
+    return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.DELETE_ON_CLOSE);
+  }
+
+  // s with k's record in r, if there is one, folded onto it
+  private Object lookup(int p, Run r, int hash, K k, Object s) throws IOException {
+    if (r.count == 0 || hash < r.hashes[0])
+      return s;
+    // the last block starting below hash, a run of equal hashes may begin in it
+    int lo = 0, hi = r.hashes.length - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (r.hashes[mid] < hash)
+        lo = mid;
+      else
+        hi = mid - 1;
+    }
+    if (lookupBuffer == null)
+      lookupBuffer = ByteBuffer.allocate(LOOKUP_BUFFER_BYTES);
+    RunCursor c = new RunCursor(files[p], r, lo, lookupBuffer);
+    try {
+      for (c.advance(); !c.done && c.hash <= hash; c.advance())
+        if (c.hash == hash && Objects.equals(c.key, k))
+          return fold(s, c.flags, c.value);
+      return s;
+    } finally {
+      lookupBuffer = c.in.buf;
+    }
+  }
+
+  interface Sink<K, V> {
+    void accept(int hash, K k, V v) throws IOException;
+  }
+
+  // Hands every key of partition p to sink in hash order, its records in
+  // the runs, and in the map when withMemory, folded oldest first. Keys
+  // whose latest record is a removal are left out.
+  @SuppressWarnings("unchecked")
+  private void mergeRuns(int p, boolean withMemory, Sink<K, V> sink) throws IOException {
+    List<Cursor> cursors = new ArrayList<>();
+    for (Run r : runs[p])
+      cursors.add(new RunCursor(files[p], r, 0, ByteBuffer.allocate(MERGE_BUFFER_BYTES)));
+    if (withMemory)
+      cursors.add(new MemoryCursor(mem[p]));
+    for (Cursor c : cursors)
+      c.advance();
+    // the keys with the current hash, usually one, and their folded values
+    List<K> keys = new ArrayList<>();
+    List<Object> values = new ArrayList<>();
+    for (;;) {
+      boolean any = false;
+      int hash = 0;
+      for (Cursor c : cursors) {
+        if (!c.done && (!any || c.hash < hash)) {
+          hash = c.hash;
+          any = true;
+        }
+      }
+      if (!any)
+        return;
+      for (Cursor c : cursors) {
+        for (; !c.done && c.hash == hash; c.advance()) {
+          int j = keys.indexOf(c.key);
+          if (j < 0) {
+            keys.add(c.key);
+            values.add(fold(null, c.flags, c.value));
+          } else {
+            values.set(j, fold(values.get(j), c.flags, c.value));
+          }
+        }
+      }
+      for (int j = 0; j < keys.size(); ++j)
+        if (values.get(j) != null)
+          sink.accept(hash, keys.get(j), (V) values.get(j));
+      keys.clear();
+      values.clear();
+    }
+  }
+
+  // deletes the temp files, the map can not be used afterwards
+  @Override
+  public void close() {
+    if (mem == null)
+      return;
+    mem = null;
+    IOException failure = null;
+    for (int p = 0; p < PARTITIONS; ++p) {
+      try {
+        if (files[p] != null)
+          files[p].close();
+      } catch (IOException e) {
+        failure = e;
+      }
+      files[p] = null;
+      runs[p] = null;
+    }
+    if (failure != null)
+      throw new UncheckedIOException(failure);
+  }
+
+  // appends one run to the end of a file, indexing it as it goes
+  final class RunWriter {
+    final MyHashMapSnapshot.Writer<K, V> out;
+    final long start;
+    int count, hashes[] = new int[16];
+    long offsets[] = new long[16];
+
+    RunWriter(FileChannel channel) throws IOException {
+      this.start = channel.size();
+      channel.position(start);
+      if (writeBuffer == null)
+        writeBuffer = ByteBuffer.allocate(MyHashMapSnapshot.BUFFER_BYTES);
+      this.out = new MyHashMapSnapshot.Writer<>(channel, keyCodec, valueCodec, writeBuffer);
+    }
+
+    void add(int hash, int flags, K k, V v) throws IOException {
+      if (count % INDEX_INTERVAL == 0) {
+        int j = count / INDEX_INTERVAL;
+        if (j == hashes.length) {
+          hashes = Arrays.copyOf(hashes, j << 1);
+          offsets = Arrays.copyOf(offsets, j << 1);
+        }
+        hashes[j] = hash;
+        offsets[j] = start + out.position();
+      }
+      out.record(hash, flags, k, v);
+      ++count;
+    }
+
+    Run finish() throws IOException {
+      out.flush();
+      writeBuffer = out.buf;
+      int n = (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+      return new Run(start, start + out.position(), count, Arrays.copyOf(hashes, n), Arrays.copyOf(offsets, n));
+    }
+  }
+
+  // records in hash order, next one read by advance()
+  abstract class Cursor {
+    int hash, flags;
+    K key;
+    Object value;
+    boolean done;
+
+    abstract void advance() throws IOException;
+  }
+
+  // a run from its index-th block on
+  final class RunCursor extends Cursor implements ReadableByteChannel {
+    final FileChannel file;
+    final long end;
+    final MyHashMapSnapshot.Reader<K, V> in;
+    long position;
+    int at, left;
+
+    RunCursor(FileChannel file, Run r, int index, ByteBuffer buf) {
+      this.file = file;
+      this.end = r.end;
+      this.position = r.offsets[index];
+      this.at = index * INDEX_INTERVAL;
+      this.left = r.count - at;
+      this.in = new MyHashMapSnapshot.Reader<>(this, keyCodec, valueCodec, buf);
+    }
+
+    @Override
+    void advance() throws IOException {
+      if (left == 0) {
+        done = true;
+        return;
+      }
+      in.next(at++);
+      --left;
+      hash = in.hash;
+      flags = in.flags;
+      key = in.key;
+      value = in.value;
+    }
+
+    // reads stop at the end of the run
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      if (position >= end)
+        return -1;
+      int limit = dst.limit();
+      dst.limit(dst.position() + (int) Math.min(dst.remaining(), end - position));
+      try {
+        int n = file.read(dst, position);
+        if (n > 0)
+          position += n;
+        return n;
+      } finally {
+        dst.limit(limit);
+      }
+    }
+
+    @Override
+    public boolean isOpen() {
+      return file.isOpen();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  // a partition's map sorted like a run, the newest records of the partition
+  final class MemoryCursor extends Cursor {
+    final Object keys[], values[];
+    final long order[];
+    int at;
+
+    @SuppressWarnings("unchecked")
+    MemoryCursor(MyHashMap<K, Object> m) {
+      int n = m.size(), i = 0;
+      keys = new Object[n];
+      values = new Object[n];
+      order = new long[n];
+      for (Map.Entry<K, Object> e : m.entrySet()) {
+        keys[i] = e.getKey();
+        values[i] = e.getValue();
+        order[i] = ((long) MyHashMap.hash(keys[i]) << 32) | i;
+        ++i;
+      }
+      Arrays.sort(order);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    void advance() {
+      if (at == order.length) {
+        done = true;
+        return;
+      }
+      long o = order[at++];
+      int j = (int) o;
+      hash = (int) (o >> 32);
+      key = (K) keys[j];
+      Object v = values[j];
+      flags = (v instanceof Reset) ? RESET : 0;
+      value = (v instanceof Reset) ? ((Reset) v).value : v;
+    }
+  }
+
+}
@@ -0,0 +1,414 @@
+package customhashmap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// Open addressing engine behind MyHashMap.Engine.SWISS, after Abseil's
+// SwissTable. Slots come in aligned groups of 16, each slot with one control
+// byte: the low 7 bits of its hash when full, otherwise EMPTY or DELETED.
+// A probe loads the 16 control bytes of a group as two longs and compares
+// them all against the hash fragment at once (SWAR), so a key is only read on
+// a likely match. Keys and values sit inline in one flat array, so the value
+// of a matched key is on the same cache line.
+final class SwissTable<K, V> {
+
+  static final int GROUP_SIZE = 16, GROUP_SHIFT = 4;
+  // two array elements per slot
+  static final int MAXIMUM_CAPACITY = 1 << 29;
+  static final float MAX_LOAD_FACTOR = 0.875f;
+  // an insert probing this many groups on a seeded table turns strong
+  // hashing on, see SeededHash
+  static final int LONG_PROBE = 8;
+  // a full slot has the high bit clear, EMPTY is the only value with bits 7
+  // and 6 both set
+  static final byte EMPTY = (byte) 0xFF, DELETED = (byte) 0x80;
+  static final long LSB = 0x0101010101010101L, MSB = 0x8080808080808080L;
+
+  private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  final float loadFactor;
+  int size, growthLeft, groupMask;
+  byte ctrl[];
+  // key of slot i at 2 * i, its value right after it on the same cache line
+  Object slots[];
+  // shared with the owning MyHashMap, null while stats are off
+  MyHashMapStats stats;
+  // the owning MyHashMap's, 0 while seeded hashing is off
+  long seed;
+  boolean strongHash;
+  // groups probed by the last findOrPrepareInsert()
+  int lastProbe;
+
+  SwissTable(int iniCap, float loadFactor) {
+    this.loadFactor = Math.min(loadFactor, MAX_LOAD_FACTOR);
+    allocate(capacityFor(iniCap));
+  }
+
+  private int capacityFor(int entries) {
+    int cap = MyHashMap.tableSizeFor((int) Math.min(MAXIMUM_CAPACITY, Math.ceil(entries / loadFactor)));
+    return Math.max(cap, GROUP_SIZE);
+  }
+
+  private void allocate(int cap) {
+    ctrl = new byte[cap];
+    Arrays.fill(ctrl, EMPTY);
+    slots = new Object[cap << 1];
+    groupMask = (cap >>> GROUP_SHIFT) - 1;
+    growthLeft = maxLoad(cap);
+  }
+
+  @SuppressWarnings("unchecked")
+  final K keyAt(int i) {
+    return (K) slots[i << 1];
+  }
+
+  @SuppressWarnings("unchecked")
+  final V valueAt(int i) {
+    return (V) slots[(i << 1) + 1];
+  }
+
+  private int maxLoad(int cap) {
+    return (cap >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY - 1 : (int) (cap * loadFactor);
+  }
+
+  // MyHashMap.hash() is only mixed in its low bits, but the fragment and the
+  // group index need all of them, so it goes through murmur3's finalizer
+  final int hash(Object k) {
+    return (seed == 0) ? mix(MyHashMap.hash(k)) : SeededHash.hash(k, seed, strongHash);
+  }
+
+  static final int mix(int h) {
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    return h ^ (h >>> 16);
+  }
+
+  // bit i of the result is bit 7 of byte i of bits, like SSE2's movemask
+  private static int movemask(long bits) {
+    return (int) (((bits >>> 7) * 0x0102040810204080L) >>> 56);
+  }
+
+  // bit 7 of every zero byte of x, exact since no carry crosses a byte
+  private static long zeroBytes(long x) {
+    long y = (x & ~MSB) + ~MSB;
+    return ~(y | x | ~MSB);
+  }
+
+  // slots of the group whose control byte is the hash fragment h2
+  private static int match(long lo, long hi, int h2) {
+    long b = LSB * h2, x = zeroBytes(lo ^ b), y = zeroBytes(hi ^ b);
+    return ((x | y) == 0) ? 0 : movemask(x) | (movemask(y) << 8);
+  }
+
+  private static boolean hasEmpty(long lo, long hi) {
+    return ((lo & (lo << 1) | hi & (hi << 1)) & MSB) != 0;
+  }
+
+  private static int matchEmptyOrDeleted(long lo, long hi) {
+    return movemask(lo & MSB) | (movemask(hi & MSB) << 8);
+  }
+
+  // MyHashMap.getAll() on this table, GET_ALL_GROUP keys at a time: the
+  // first group of every key is matched before any key is compared, and the
+  // first match of every key is compared before any probe goes further
+  final void getAll(K keys[], V out[]) {
+    byte c[] = ctrl;
+    Object s[] = slots;
+    int m = groupMask, hashes[] = new int[MyHashMap.GET_ALL_GROUP], at[] = new int[MyHashMap.GET_ALL_GROUP];
+    for (int base = 0; base < keys.length; base += MyHashMap.GET_ALL_GROUP) {
+      int n = Math.min(MyHashMap.GET_ALL_GROUP, keys.length - base);
+      for (int j = 0; j < n; ++j)
+        hashes[j] = hash(keys[base + j]);
+      // the first candidate slot, -1 when the key is surely absent and -2
+      // when the probe has to go on
+      for (int j = 0; j < n; ++j) {
+        int h = hashes[j], g = ((h >>> 7) & m) << GROUP_SHIFT;
+        long lo = (long) LONGS.get(c, g), hi = (long) LONGS.get(c, g + 8);
+        int bits = match(lo, hi, h & 0x7f);
+        at[j] = (bits != 0) ? g + Integer.numberOfTrailingZeros(bits) : hasEmpty(lo, hi) ? -1 : -2;
+      }
+      for (int j = 0; j < n; ++j) {
+        K k = keys[base + j];
+        Object key;
+        int i = at[j];
+        if (i == -2 || (i >= 0 && !((key = s[i << 1]) == k || (k != null && k.equals(key)))))
+          i = find(k, hashes[j]);
+        if (stats != null)
+          stats.recordGet(i >= 0);
+        out[base + j] = (i < 0) ? null : valueAt(i);
+      }
+    }
+  }
+
+  // slot holding k, or -1
+  final int find(Object k, int h) {
+    byte c[] = ctrl;
+    Object s[] = slots, key;
+    int m = groupMask, g = (h >>> 7) & m, h2 = h & 0x7f;
+    for (int step = 0;;) {
+      int base = g << GROUP_SHIFT;
+      long lo = (long) LONGS.get(c, base), hi = (long) LONGS.get(c, base + 8);
+      for (int bits = match(lo, hi, h2); bits != 0; bits &= bits - 1) {
+        int i = base + Integer.numberOfTrailingZeros(bits);
+        if ((key = s[i << 1]) == k || (k != null && k.equals(key)))
+          return i;
+      }
+      // a key is never placed past a group that still has an empty slot
+      if (hasEmpty(lo, hi))
+        return -1;
+      g = (g + ++step) & m;
+    }
+  }
+
+  // slot holding k, or -(insertion slot + 1) when k is absent
+  private int findOrPrepareInsert(Object k, int h) {
+    byte c[] = ctrl;
+    Object s[] = slots, key;
+    int m = groupMask, g = (h >>> 7) & m, h2 = h & 0x7f, ins = -1, bits;
+    for (int step = 0;;) {
+      int base = g << GROUP_SHIFT;
+      long lo = (long) LONGS.get(c, base), hi = (long) LONGS.get(c, base + 8);
+      for (bits = match(lo, hi, h2); bits != 0; bits &= bits - 1) {
+        int i = base + Integer.numberOfTrailingZeros(bits);
+        if ((key = s[i << 1]) == k || (k != null && k.equals(key)))
+          return i;
+      }
+      if (ins < 0 && (bits = matchEmptyOrDeleted(lo, hi)) != 0)
+        ins = base + Integer.numberOfTrailingZeros(bits);
+      if (hasEmpty(lo, hi)) {
+        lastProbe = step;
+        return -(ins + 1);
+      }
+      g = (g + ++step) & m;
+    }
+  }
+
+  private int findInsertSlot(int h) {
+    byte c[] = ctrl;
+    int m = groupMask, g = (h >>> 7) & m, bits;
+    for (int step = 0;;) {
+      int base = g << GROUP_SHIFT;
+      long lo = (long) LONGS.get(c, base), hi = (long) LONGS.get(c, base + 8);
+      if ((bits = matchEmptyOrDeleted(lo, hi)) != 0)
+        return base + Integer.numberOfTrailingZeros(bits);
+      g = (g + ++step) & m;
+    }
+  }
+
+  private void insertAt(int i, int h, K k, V v) {
+    if (lastProbe >= LONG_PROBE && seed != 0 && !strongHash && k instanceof String) {
+      // see MyHashMap.strengthenHash()
+      strongHash = true;
+      rebuild(ctrl.length);
+      i = findInsertSlot(h = hash(k));
+    }
+    if (growthLeft == 0 && ctrl[i] == EMPTY) {
+      rehash(size + 1);
+      i = findInsertSlot(h);
+    }
+    if (ctrl[i] == EMPTY)
+      --growthLeft;
+    ctrl[i] = (byte) (h & 0x7f);
+    slots[i << 1] = k;
+    slots[(i << 1) + 1] = v;
+    ++size;
+  }
+
+  private void removeAt(int i) {
+    int base = i & -GROUP_SIZE;
+    long lo = (long) LONGS.get(ctrl, base), hi = (long) LONGS.get(ctrl, base + 8);
+    // A group that has an empty slot has had one since the last rehash, so no
+    // probe ever went past it and the slot can simply be freed. Otherwise a
+    // tombstone keeps later probes going.
+    if (hasEmpty(lo, hi)) {
+      ctrl[i] = EMPTY;
+      ++growthLeft;
+    } else {
+      ctrl[i] = DELETED;
+    }
+    slots[i << 1] = null;
+    slots[(i << 1) + 1] = null;
+    --size;
+  }
+
+  // rebuilds the table for at least entries, which also drops the tombstones
+  private void rehash(int entries) {
+    long start = (stats == null) ? 0 : System.nanoTime();
+    int oldCap = ctrl.length, cap = capacityFor(entries);
+    // a table that is mostly tombstones keeps its capacity, otherwise it at
+    // least doubles
+    if (cap <= oldCap)
+      cap = (entries > maxLoad(oldCap) / 2 && oldCap < MAXIMUM_CAPACITY) ? oldCap << 1 : oldCap;
+    if (entries > maxLoad(cap))
+      throw new IllegalStateException("map is full");
+    rebuild(cap);
+    if (stats != null)
+      stats.recordResize(System.nanoTime() - start);
+  }
+
+  // reinserts every key into a new table of cap slots
+  private void rebuild(int cap) {
+    byte oldCtrl[] = ctrl;
+    Object oldSlots[] = slots;
+    int oldCap = oldCtrl.length;
+    lastProbe = 0;
+    allocate(cap);
+    for (int j = 0; j < oldCap; ++j) {
+      if (oldCtrl[j] >= 0) {
+        Object k = oldSlots[j << 1];
+        int h = hash(k), i = findInsertSlot(h);
+        ctrl[i] = (byte) (h & 0x7f);
+        slots[i << 1] = k;
+        slots[(i << 1) + 1] = oldSlots[(j << 1) + 1];
+        --growthLeft;
+      }
+    }
+  }
+
+  // grows once for entries, so a bulk insert does not rehash on the way
+  void reserve(int entries) {
+    if (entries - size > growthLeft)
+      rehash(entries);
+  }
+
+  boolean containsKey(Object k) {
+    return find(k, hash(k)) >= 0;
+  }
+
+  V put(K k, V v, boolean onlyIfAbsent) {
+    int h = hash(k), i = findOrPrepareInsert(k, h);
+    if (i < 0) {
+      insertAt(-i - 1, h, k, v);
+      return null;
+    }
+    V oldValue = valueAt(i);
+    if (!onlyIfAbsent || oldValue == null)
+      slots[(i << 1) + 1] = v;
+    return oldValue;
+  }
+
+  // inserts k, which the caller knows is absent, under its hash(k)
+  void putNew(int h, K k, V v) {
+    lastProbe = 0;
+    insertAt(findInsertSlot(h), h, k, v);
+  }
+
+  V remove(Object k) {
+    int i = find(k, hash(k));
+    if (i < 0)
+      return null;
+    V oldValue = valueAt(i);
+    removeAt(i);
+    return oldValue;
+  }
+
+  boolean remove(Object k, Object v) {
+    int i = find(k, hash(k));
+    if (i < 0 || !(v == valueAt(i) || (v != null && v.equals(valueAt(i)))))
+      return false;
+    removeAt(i);
+    return true;
+  }
+
+  V computeIfAbsent(K k, Function<? super K, ? extends V> mappingFunction) {
+    int h = hash(k), i = findOrPrepareInsert(k, h);
+    V v;
+    if (i >= 0 && (v = valueAt(i)) != null)
+      return v;
+    if ((v = mappingFunction.apply(k)) == null)
+      return null;
+    if (i >= 0)
+      slots[(i << 1) + 1] = v;
+    else
+      insertAt(-i - 1, h, k, v);
+    return v;
+  }
+
+  V computeIfPresent(K k, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    int i = find(k, hash(k));
+    V oldValue, v;
+    if (i < 0 || (oldValue = valueAt(i)) == null)
+      return null;
+    if ((v = remappingFunction.apply(k, oldValue)) == null)
+      removeAt(i);
+    else
+      slots[(i << 1) + 1] = v;
+    return v;
+  }
+
+  V compute(K k, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    int h = hash(k), i = findOrPrepareInsert(k, h);
+    V v = remappingFunction.apply(k, (i < 0) ? null : valueAt(i));
+    if (v == null) {
+      if (i >= 0)
+        removeAt(i);
+    } else if (i >= 0) {
+      slots[(i << 1) + 1] = v;
+    } else {
+      insertAt(-i - 1, h, k, v);
+    }
+    return v;
+  }
+
+  V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    int h = hash(k), i = findOrPrepareInsert(k, h);
+    if (i < 0) {
+      insertAt(-i - 1, h, k, v);
+      return v;
+    }
+    V oldValue = valueAt(i);
+    if (oldValue != null && (v = remappingFunction.apply(oldValue, v)) == null)
+      removeAt(i);
+    else
+      slots[(i << 1) + 1] = v;
+    return v;
+  }
+
+  void clear() {
+    Arrays.fill(ctrl, EMPTY);
+    Arrays.fill(slots, null);
+    size = 0;
+    growthLeft = maxLoad(ctrl.length);
+  }
+
+  // counts the keys by the number of groups probed to reach them, returns the
+  // longest probe
+  int probeHistogram(long hist[]) {
+    byte c[] = ctrl;
+    int m = groupMask, max = 0;
+    for (int i = 0; i < c.length; ++i) {
+      if (c[i] < 0)
+        continue;
+      int g = (hash(slots[i << 1]) >>> 7) & m, n = 1;
+      for (int step = 0; g != i >>> GROUP_SHIFT; ++n)
+        g = (g + ++step) & m;
+      hist[Math.min(n - 1, hist.length - 1)]++;
+      max = Math.max(max, n);
+    }
+    return max;
+  }
+
+  void forEach(BiConsumer<? super K, ? super V> action) {
+    byte c[] = ctrl;
+    for (int i = 0; i < c.length; ++i) {
+      if (c[i] >= 0)
+        action.accept(keyAt(i), valueAt(i));
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder res = new StringBuilder("{");
+    forEach((k, v) -> res.append(k).append('=').append(v).append(", "));
+    if (res.length() > 1)
+      res.setLength(res.length() - 2);
+    return res.append('}').toString();
+  }
+
+}
@@ -1,8 +1,14 @@
 import controller.*;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import models.*;
 import models.enums.SeatCategory;
 
@@ -12,21 +18,34 @@ public class Main {
   // add screens
   MovieController movieController;
   TheatreController theatreController;
+  BookingController bookingController;
 
   public Main() {
     movieController = new MovieController();
     theatreController = new TheatreController();
+    bookingController = new BookingController();
   }
 
-  public static void main(String[] args) {
+  public static void main(String[] args) throws InterruptedException {
     Main bookMyShow = new Main();
 
     bookMyShow.initialize();
 
-    // user1
-    bookMyShow.createBooking("Banglore", "BAHUBALI");
-    // user2
-    bookMyShow.createBooking("Banglore", "BAHUBALI");
+    // expire unpaid holds every second
+    ScheduledExecutorService expiry = Executors.newSingleThreadScheduledExecutor();
+    bookMyShow.bookingController.scheduleExpiry(expiry, 1000);
+    try {
+      // user1
+      bookMyShow.createBooking("Banglore", "BAHUBALI");
+      // user2
+      bookMyShow.createBooking("Banglore", "BAHUBALI");
+
+      if (args.length > 0 && args[0].equals("stress")) {
+        bookMyShow.stressTest();
+      }
+    } finally {
+      expiry.shutdownNow();
+    }
   }
 
   void createBooking(String userCity, String movieName) {
@@ -53,22 +72,123 @@ public class Main {
     Show interestedShow = runningShows.get(0);
 
     // 5. select the seat
-    Seat seatNumber = new Seat(30, "", SeatCategory.SILVER);
-    List<Seat> bookedSeats = interestedShow.getBookedSeats();
-    if (!bookedSeats.contains(seatNumber)) {
-      bookedSeats.add(seatNumber);
-      // startPayment
-      Booking booking = new Booking(1, interestedShow, seatNumber, interestedTheatre);
-    } else {
+    Hold hold = bookingController.holdSeats(interestedTheatre, interestedShow, 30);
+    if (hold == null) {
       // throw exception
       System.out.println("seat already booked, try again");
       return;
     }
 
+    // 6. pay before the hold expires
+    Payment payment = new Payment(hold.getId(), true);
+    Booking booking = bookingController.confirmBooking(hold, payment);
+    if (booking == null) {
+      System.out.println("hold expired, try again");
+      return;
+    }
+
     System.out.println("BOOKING SUCCESSFUL");
 
   }
 
+  // many users holding 1 to 4 adjacent seats of one show at once, half of
+  // them releasing the hold again and the others paying, while every held
+  // seat records its hold to catch a seat held twice. Each thread keeps only
+  // its last few bookings and cancels the oldest beyond that, so about a
+  // third of the show stays booked and seats keep changing hands to the end
+  // instead of the show selling out early.
+  void stressTest() throws InterruptedException {
+    int seatCount = 5000, threads = 8, attemptsPerThread = 50000, keptPerThread = 80;
+    List<Seat> seats = new ArrayList<>();
+    for (int i = 0; i < seatCount; i++) {
+      SeatCategory category = i < 3000 ? SeatCategory.SILVER : i < 4500 ? SeatCategory.GOLD : SeatCategory.PLATINUM;
+      seats.add(new Seat(i, "", category));
+    }
+    Theatre theatre = new Theatre(3, "Banglore");
+    Show show = new Show(5, movieController.getMovieByName("BAHUBALI"), LocalDateTime.now(), new Screen(2, seats));
+    AtomicIntegerArray owner = new AtomicIntegerArray(seatCount);
+    AtomicInteger doubleBookings = new AtomicInteger();
+    AtomicInteger claims = new AtomicInteger();
+    AtomicInteger bookings = new AtomicInteger();
+
+    Thread[] users = new Thread[threads];
+    long start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      users[t] = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ArrayDeque<Booking> kept = new ArrayDeque<>();
+        for (int i = 0; i < attemptsPerThread; i++) {
+          int[] seatIds = new int[1 + random.nextInt(4)];
+          int first = random.nextInt(seatCount - seatIds.length + 1);
+          for (int j = 0; j < seatIds.length; j++) {
+            seatIds[j] = first + j;
+          }
+          Hold hold = bookingController.holdSeats(theatre, show, seatIds);
+          if (hold == null) {
+            continue;
+          }
+          claims.incrementAndGet();
+          for (int seatId : seatIds) {
+            if (!owner.compareAndSet(seatId, 0, hold.getId())) {
+              doubleBookings.incrementAndGet();
+            }
+          }
+          if (random.nextInt(2) == 0) {
+            for (int seatId : seatIds) {
+              owner.set(seatId, 0);
+            }
+            bookingController.releaseHold(hold);
+            continue;
+          }
+          Booking booking = bookingController.confirmBooking(hold, new Payment(hold.getId(), true));
+          if (booking == null) {
+            // the hold expired, and its seats went back with it
+            for (int seatId : seatIds) {
+              owner.compareAndSet(seatId, hold.getId(), 0);
+            }
+            continue;
+          }
+          bookings.incrementAndGet();
+          kept.addLast(booking);
+          if (kept.size() > keptPerThread) {
+            Booking oldest = kept.removeFirst();
+            for (Seat seat : oldest.getSeats()) {
+              owner.set(seat.getId(), 0);
+            }
+            bookingController.cancelBooking(oldest);
+          }
+        }
+      });
+      users[t].start();
+    }
+    for (Thread user : users) {
+      user.join();
+    }
+    long nanos = System.nanoTime() - start;
+
+    int booked = 0;
+    for (int i = 0; i < seatCount; i++) {
+      if (show.isBooked(i) != (owner.get(i) != 0)) {
+        doubleBookings.incrementAndGet();
+      }
+      if (show.isBooked(i)) {
+        booked++;
+      }
+    }
+    int free = 0;
+    for (SeatCategory category : SeatCategory.values()) {
+      free += show.freeCount(category);
+    }
+    long attempts = (long) threads * attemptsPerThread;
+    System.out.println(attempts + " attempts, " + claims.get() + " holds, " + bookings.get() + " bookings, "
+        + (attempts * 1000000000L / nanos) + " attempts/s, " + (claims.get() * 1000000000L / nanos) + " holds/s, "
+        + booked + " seats booked, " + free + " free");
+    if (doubleBookings.get() != 0 || booked + free != seatCount) {
+      throw new IllegalStateException(doubleBookings.get() + " seats booked twice or lost");
+    }
+    System.out.println("NO DOUBLE BOOKINGS");
+  }
+
   void initialize() {
 
     // create movies
@@ -0,0 +1,134 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import models.*;
+import models.enums.HoldStatus;
+
+// Books seats for any number of users at once. Seats are first held while
+// the user pays, then the hold is confirmed into a booking, or released, or
+// it expires after the show's hold ttl and its seats are free again. Seats
+// are claimed with compare-and-set on the show's seat bitmap, so there are no
+// locks around the seats and a seat is never held or booked twice.
+// Every show has a timing wheel of its own, so holds on different shows never
+// wait for each other. A wheel only expires holds when it is called: holding
+// or ending a hold of the show advances it, and expireHolds(), e.g. run by
+// scheduleExpiry(), advances all of them. Until then a hold past its deadline
+// keeps its seats, though it can no longer be confirmed. expireHolds() also
+// drops the wheels left without holds, and endShow() drops a show's wheel
+// for good, so only shows with holds in flight keep one.
+public class BookingController {
+  private AtomicInteger nextBookingId;
+  private AtomicInteger nextHoldId;
+  private LongSupplier clock;
+  // the wheels of the shows with holds, created with the first hold
+  private ConcurrentHashMap<Show, HoldTimingWheel> holds;
+
+  public BookingController() {
+    this(() -> System.nanoTime() / 1000000);
+  }
+
+  // clock in milliseconds, tests may pass a fake one
+  public BookingController(LongSupplier clock) {
+    nextBookingId = new AtomicInteger(1);
+    nextHoldId = new AtomicInteger(1);
+    this.clock = clock;
+    holds = new ConcurrentHashMap<>();
+  }
+
+  private HoldTimingWheel wheelOf(Show show) {
+    HoldTimingWheel wheel = holds.get(show);
+    return (wheel != null) ? wheel : holds.computeIfAbsent(show, s -> new HoldTimingWheel(clock, this::releaseSeats));
+  }
+
+  // holds every seat or none of them, returns null when any is taken
+  public Hold holdSeats(Theatre theatre, Show show, int... seatIds) {
+    if (seatIds.length == 0) {
+      throw new IllegalArgumentException("no seats to hold");
+    }
+    if (!show.bookAll(seatIds)) {
+      return null;
+    }
+    Hold hold = new Hold(nextHoldId.getAndIncrement(), show, theatre, seatIds.clone());
+    // a closed wheel is about to be dropped, the next one takes the hold
+    for (HoldTimingWheel wheel; !(wheel = wheelOf(show)).add(hold, show.getHoldTtlMillis());) {
+      holds.remove(show, wheel);
+    }
+    return hold;
+  }
+
+  // turns a paid hold into a booking, returns null when the payment failed,
+  // which keeps the hold for another try, or when the hold has ended
+  public Booking confirmBooking(Hold hold, Payment payment) {
+    if (!payment.isSuccessful() || !removeHold(hold, HoldStatus.CONFIRMED)) {
+      return null;
+    }
+    Show show = hold.getShow();
+    List<Seat> seats = new ArrayList<>();
+    for (int seatId : hold.getSeatIds()) {
+      seats.add(show.getSeat(seatId));
+    }
+    return new Booking(nextBookingId.getAndIncrement(), show, seats, hold.getTheatre(), payment);
+  }
+
+  // gives the seats back, returns false when the hold has ended already
+  public boolean releaseHold(Hold hold) {
+    if (!removeHold(hold, HoldStatus.RELEASED)) {
+      return false;
+    }
+    releaseSeats(hold);
+    return true;
+  }
+
+  // A HELD hold is always on its show's current wheel, a wheel is only
+  // closed and dropped without HELD holds or after expiring them.
+  private boolean removeHold(Hold hold, HoldStatus status) {
+    HoldTimingWheel wheel = holds.get(hold.getShow());
+    return wheel != null && wheel.remove(hold, status);
+  }
+
+  // expires the holds of every show that are due and drops the wheels left
+  // without holds, to be called periodically
+  public void expireHolds() {
+    holds.values().removeIf(HoldTimingWheel::closeIfIdle);
+  }
+
+  // Expires the holds of a show that is over and drops its wheel. Holding
+  // seats of the show again starts a new one.
+  public void endShow(Show show) {
+    HoldTimingWheel wheel = holds.remove(show);
+    if (wheel != null) {
+      wheel.close();
+    }
+  }
+
+  // runs expireHolds() on executor every periodMillis until the returned
+  // future is cancelled or the executor shut down
+  public ScheduledFuture<?> scheduleExpiry(ScheduledExecutorService executor, long periodMillis) {
+    return executor.scheduleAtFixedRate(this::expireHolds, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+  }
+
+  // gives the seats back, returns false when the booking was cancelled
+  // already, as its seats may be booked by someone else by now
+  public boolean cancelBooking(Booking booking) {
+    if (!booking.cancel()) {
+      return false;
+    }
+    for (Seat seat : booking.getSeats()) {
+      booking.getShow().release(seat.getId());
+    }
+    return true;
+  }
+
+  private void releaseSeats(Hold hold) {
+    for (int seatId : hold.getSeatIds()) {
+      hold.getShow().release(seatId);
+    }
+  }
+}
@@ -6,13 +6,67 @@ import models.*;
 public class TheatreController {
   private Map<String, List<Theatre>> cityVsTheatre;
   private List<Theatre> allTheatres;
+  // shows by city, then movie id, kept up to date as theatres and shows are
+  // added, so a search only touches the shows it returns
+  private Map<String, Map<Integer, MovieShows>> cityVsMovieShows;
+  // the city each theatre was mapped under, lower case, which its shows are
+  // indexed under
+  private Map<Theatre, String> theatreVsCity;
+
+  // the shows of one movie in one city, ordered by start time, with the
+  // search result built by the first search after a change
+  private static class MovieShows {
+    private List<Show> shows = new ArrayList<>();
+    private List<Theatre> theatres = new ArrayList<>();
+    // null when a show was added since it was built
+    private Map<Theatre, List<Show>> result;
+
+    void add(Theatre theatre, Show show) {
+      // after the shows starting at the same time, so ties keep their order
+      int low = 0, high = shows.size();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (shows.get(mid).getStartTime().isAfter(show.getStartTime())) {
+          high = mid;
+        } else {
+          low = mid + 1;
+        }
+      }
+      shows.add(low, show);
+      theatres.add(low, theatre);
+      result = null;
+    }
+
+    Map<Theatre, List<Show>> result() {
+      if (result != null) {
+        return result;
+      }
+      // theatres in the order of their first show
+      Map<Theatre, List<Show>> theatreShows = new LinkedHashMap<>();
+      for (int i = 0; i < shows.size(); i++) {
+        theatreShows.computeIfAbsent(theatres.get(i), t -> new ArrayList<>()).add(shows.get(i));
+      }
+      for (Map.Entry<Theatre, List<Show>> entry : theatreShows.entrySet()) {
+        entry.setValue(Collections.unmodifiableList(entry.getValue()));
+      }
+      result = Collections.unmodifiableMap(theatreShows);
+      return result;
+    }
+  }
 
   public TheatreController() {
     cityVsTheatre = new HashMap<>();
     allTheatres = new ArrayList<>();
+    cityVsMovieShows = new HashMap<>();
+    theatreVsCity = new HashMap<>();
   }
 
+  // indexes the shows the theatre has by now, later ones go through addShow()
   public void addCityTheatreMapping(String city, Theatre theatre) {
+    if (theatreVsCity.containsKey(theatre)) {
+      throw new IllegalStateException("theatre " + theatre.getId() + " is mapped already");
+    }
+    theatreVsCity.put(theatre, city.toLowerCase());
     if (cityVsTheatre.containsKey(city.toLowerCase())) {
       cityVsTheatre.get(city.toLowerCase()).add(theatre);
     } else {
@@ -20,6 +74,25 @@ public class TheatreController {
       temp.add(theatre);
       cityVsTheatre.put(city.toLowerCase(), temp);
     }
+    for (Show show : theatre.getShows()) {
+      indexShow(city, theatre, show);
+    }
+  }
+
+  // Adds a show to the theatre. It is indexed under the city the theatre was
+  // mapped under, or when the theatre is mapped later on.
+  public void addShow(Theatre theatre, Show show) {
+    theatre.addShow(show);
+    String city = theatreVsCity.get(theatre);
+    if (city != null) {
+      indexShow(city, theatre, show);
+    }
+  }
+
+  private void indexShow(String city, Theatre theatre, Show show) {
+    cityVsMovieShows.computeIfAbsent(city.toLowerCase(), c -> new HashMap<>())
+        .computeIfAbsent(show.getMovie().getId(), id -> new MovieShows())
+        .add(theatre, show);
   }
 
   public void addTheatre(Theatre theatre) {
@@ -34,27 +107,15 @@ public class TheatreController {
     return allTheatres;
   }
 
+  // The shows of the movie in the city by theatre, theatres in the order of
+  // their first show and shows by start time. The map is shared between
+  // searches and can not be modified.
   public Map<Theatre, List<Show>> getShows(Movie movie, String city) {
-    List<Theatre> theatres = cityVsTheatre.getOrDefault(city.toLowerCase(), null);
-    if (theatres == null)
-      return null;
-
-    Map<Theatre, List<Show>> theatreShows = new HashMap<>();
-    for (Theatre theatre : theatres) {
-
-      List<Show> givenMovieShows = new ArrayList<>();
-      List<Show> shows = theatre.getShows();
-
-      for (Show show : shows) {
-        if (show.getMovie().getId() == movie.getId()) {
-          givenMovieShows.add(show);
-        }
-      }
-      if (!givenMovieShows.isEmpty()) {
-        theatreShows.put(theatre, givenMovieShows);
-      }
-    }
+    Map<Integer, MovieShows> movieShows = cityVsMovieShows.get(city.toLowerCase());
+    if (movieShows == null)
+      return cityVsTheatre.containsKey(city.toLowerCase()) ? Collections.emptyMap() : null;
 
-    return theatreShows;
+    MovieShows shows = movieShows.get(movie.getId());
+    return (shows == null) ? Collections.emptyMap() : shows.result();
   }
-}
\ No newline at end of file
+}
@@ -1,17 +1,37 @@
 package models;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class Booking {
   private int id;
   private Show show;
   private Seat seat;
+  private List<Seat> seats;
   private Payment payment;
   private Theatre theatre;
+  private AtomicBoolean cancelled = new AtomicBoolean();
 
   public Booking(int id, Show show, Seat seat, Theatre theatre) {
     this.id = id;
     this.show = show;
     this.seat = seat;
+    this.seats = Collections.singletonList(seat);
+    this.theatre = theatre;
+  }
+
+  public Booking(int id, Show show, List<Seat> seats, Theatre theatre) {
+    this(id, show, seats, theatre, null);
+  }
+
+  public Booking(int id, Show show, List<Seat> seats, Theatre theatre, Payment payment) {
+    this.id = id;
+    this.show = show;
+    this.seat = seats.get(0);
+    this.seats = Collections.unmodifiableList(seats);
     this.theatre = theatre;
+    this.payment = payment;
   }
 
   public int getId() {
@@ -26,6 +46,10 @@ public class Booking {
     return seat;
   }
 
+  public List<Seat> getSeats() {
+    return seats;
+  }
+
   public Theatre getTheatre() {
     return theatre;
   }
@@ -33,4 +57,13 @@ public class Booking {
   public Payment getPayment() {
     return payment;
   }
+
+  // true for the one call that cancels the booking, false once cancelled
+  public boolean cancel() {
+    return cancelled.compareAndSet(false, true);
+  }
+
+  public boolean isCancelled() {
+    return cancelled.get();
+  }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package models;
+
+import models.enums.HoldStatus;
+
+// Seats kept for a user while they pay. The seats are taken in the show's
+// seat bitmap for as long as the hold is HELD, and given back when it is
+// released or expires.
+public class Hold {
+  private int id;
+  private Show show;
+  private Theatre theatre;
+  private int[] seatIds;
+  // changed by HoldTimingWheel under its lock
+  volatile long expiresAt;
+  volatile HoldStatus status;
+  Hold prevInSlot, nextInSlot;
+
+  public Hold(int id, Show show, Theatre theatre, int[] seatIds) {
+    this.id = id;
+    this.show = show;
+    this.theatre = theatre;
+    this.seatIds = seatIds;
+    this.status = HoldStatus.HELD;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public Show getShow() {
+    return show;
+  }
+
+  public Theatre getTheatre() {
+    return theatre;
+  }
+
+  public int[] getSeatIds() {
+    return seatIds.clone();
+  }
+
+  // milliseconds of the wheel's clock
+  public long getExpiresAt() {
+    return expiresAt;
+  }
+
+  public HoldStatus getStatus() {
+    return status;
+  }
+}
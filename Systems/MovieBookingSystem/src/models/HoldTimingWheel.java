@@ -0,0 +1,169 @@
+package models;
+
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import models.enums.HoldStatus;
+
+// Expires holds on a hierarchical timing wheel: 5 levels of 64 slots, the
+// first ticking every millisecond and each next one 64 times slower, up to
+// about 12 days a turn. Every hold is linked into the slot of its deadline,
+// so adding or removing one is O(1), and advancing the wheel only visits the
+// slots that have passed, so expiring n holds costs O(n) plus those slots,
+// however many holds are still waiting. Every call advances the wheel first.
+// A closed wheel takes no more holds, so its owner can drop it.
+public class HoldTimingWheel {
+  private static final int WHEEL_BITS = 6, WHEEL_SIZE = 1 << WHEEL_BITS, WHEEL_MASK = WHEEL_SIZE - 1, LEVELS = 5;
+
+  // clock in milliseconds, tests may pass a fake one
+  private LongSupplier clock;
+  private Consumer<Hold> onExpired;
+  // wheel[i][j] is the sentinel of slot j at level i
+  private Hold[][] wheel;
+  // the time the wheel was last advanced to
+  private long now;
+  // holds that are HELD
+  private int held;
+  private boolean closed;
+
+  // onExpired is called, under the wheel's lock, for every hold that expires
+  public HoldTimingWheel(LongSupplier clock, Consumer<Hold> onExpired) {
+    this.clock = clock;
+    this.onExpired = onExpired;
+    this.wheel = new Hold[LEVELS][WHEEL_SIZE];
+    for (Hold[] level : wheel) {
+      for (int j = 0; j < WHEEL_SIZE; j++) {
+        Hold sentinel = new Hold(-1, null, null, null);
+        sentinel.prevInSlot = sentinel.nextInSlot = sentinel;
+        level[j] = sentinel;
+      }
+    }
+    this.now = clock.getAsLong();
+  }
+
+  // starts a HELD hold that expires ttlMillis from now, returns false and
+  // leaves the hold as it is when the wheel is closed
+  public synchronized boolean add(Hold hold, long ttlMillis) {
+    if (closed) {
+      return false;
+    }
+    advance();
+    held++;
+    hold.expiresAt = now + ttlMillis;
+    if (ttlMillis <= 0) {
+      expire(hold);
+    } else {
+      schedule(hold);
+    }
+    return true;
+  }
+
+  // Ends a HELD hold with status, returning false when it has ended already.
+  // A hold past its deadline has expired, even if the wheel has not got to it.
+  public synchronized boolean remove(Hold hold, HoldStatus status) {
+    advance();
+    if (hold.status != HoldStatus.HELD) {
+      return false;
+    }
+    unschedule(hold);
+    if (hold.expiresAt - now <= 0) {
+      expire(hold);
+      return false;
+    }
+    held--;
+    hold.status = status;
+    return true;
+  }
+
+  // closes the wheel when it has no HELD holds left, returns whether it is
+  // closed
+  public synchronized boolean closeIfIdle() {
+    advance();
+    if (held == 0) {
+      closed = true;
+    }
+    return closed;
+  }
+
+  // closes the wheel and expires every hold still on it
+  public synchronized void close() {
+    closed = true;
+    for (Hold[] level : wheel) {
+      for (Hold sentinel : level) {
+        Hold hold = sentinel.nextInSlot;
+        sentinel.prevInSlot = sentinel.nextInSlot = sentinel;
+        while (hold != sentinel) {
+          Hold next = hold.nextInSlot;
+          hold.prevInSlot = hold.nextInSlot = null;
+          expire(hold);
+          hold = next;
+        }
+      }
+    }
+  }
+
+  // Expires every hold that is due. The slots a level has entered since the
+  // last call are emptied, from the top level down, and the holds that are
+  // not due yet move down to the level covering their deadline, in time for
+  // that level to reach their slot.
+  public synchronized void advance() {
+    long previous = now;
+    now = Math.max(now, clock.getAsLong());
+    for (int i = LEVELS - 1; i >= 0; i--) {
+      int shift = WHEEL_BITS * i;
+      long ticks = now >> shift, delta = ticks - (previous >> shift);
+      if (delta <= 0) {
+        continue;
+      }
+      for (long t = ticks - Math.min(delta, WHEEL_SIZE) + 1; t <= ticks; t++) {
+        expireSlot(wheel[i][(int) t & WHEEL_MASK]);
+      }
+    }
+  }
+
+  private void expireSlot(Hold sentinel) {
+    Hold hold = sentinel.nextInSlot;
+    if (hold == sentinel) {
+      return;
+    }
+    sentinel.prevInSlot = sentinel.nextInSlot = sentinel;
+    while (hold != sentinel) {
+      Hold next = hold.nextInSlot;
+      hold.prevInSlot = hold.nextInSlot = null;
+      if (hold.expiresAt - now <= 0) {
+        expire(hold);
+      } else {
+        schedule(hold);
+      }
+      hold = next;
+    }
+  }
+
+  private void expire(Hold hold) {
+    held--;
+    hold.status = HoldStatus.EXPIRED;
+    onExpired.accept(hold);
+  }
+
+  // links a hold that is not due into the slot of the lowest level whose
+  // turn covers its deadline
+  private void schedule(Hold hold) {
+    long deadline = hold.expiresAt, delay = deadline - now;
+    int i = 0;
+    while (i < LEVELS - 1 && delay >= (1L << (WHEEL_BITS * (i + 1)))) {
+      i++;
+    }
+    Hold sentinel = wheel[i][(int) (deadline >> (WHEEL_BITS * i)) & WHEEL_MASK], last = sentinel.prevInSlot;
+    hold.prevInSlot = last;
+    hold.nextInSlot = sentinel;
+    last.nextInSlot = hold;
+    sentinel.prevInSlot = hold;
+  }
+
+  private void unschedule(Hold hold) {
+    if (hold.nextInSlot != null) {
+      hold.prevInSlot.nextInSlot = hold.nextInSlot;
+      hold.nextInSlot.prevInSlot = hold.prevInSlot;
+      hold.prevInSlot = hold.nextInSlot = null;
+    }
+  }
+}
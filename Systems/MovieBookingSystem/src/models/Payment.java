@@ -8,4 +8,12 @@ public class Payment {
     this.paymentId = paymentId;
     this.paymentStatus = paymentStatus;
   }
+
+  public int getPaymentId() {
+    return paymentId;
+  }
+
+  public boolean isSuccessful() {
+    return paymentStatus;
+  }
 }
\ No newline at end of file
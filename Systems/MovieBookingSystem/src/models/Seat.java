@@ -27,7 +27,15 @@ public class Seat {
 
   @Override
   public boolean equals(Object m) {
+    if (!(m instanceof Seat)) {
+      return false;
+    }
     Seat seat = (Seat) m;
     return seat.getId() == id;
   }
+
+  @Override
+  public int hashCode() {
+    return Integer.hashCode(id);
+  }
 }
\ No newline at end of file
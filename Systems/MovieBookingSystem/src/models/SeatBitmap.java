@@ -0,0 +1,177 @@
+package models;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import models.enums.SeatCategory;
+
+// Booked seats of a show, one bit per seat id, with the free seats of each
+// category counted alongside, so checking, booking and releasing a seat take
+// constant time and allocate nothing. It is thread safe without locks: every
+// change is a compare-and-set on the 64-bit word holding the seat, so two
+// users racing for a seat can never both get it.
+public class SeatBitmap {
+  private static final SeatCategory[] CATEGORIES = SeatCategory.values();
+
+  private AtomicLongArray words;
+  // seat of every id, null for ids the screen does not have
+  private Seat[] seats;
+  // free seats by category ordinal
+  private AtomicIntegerArray freeSeats;
+
+  public SeatBitmap(List<Seat> seatList) {
+    int maxId = -1;
+    for (Seat seat : seatList) {
+      maxId = Math.max(maxId, seat.getId());
+    }
+    words = new AtomicLongArray((maxId >> 6) + 1);
+    seats = new Seat[maxId + 1];
+    int[] free = new int[CATEGORIES.length];
+    for (Seat seat : seatList) {
+      seats[seat.getId()] = seat;
+      free[seat.getSeatCategory().ordinal()]++;
+    }
+    freeSeats = new AtomicIntegerArray(free);
+  }
+
+  private void checkSeat(int seatId) {
+    if (seatId < 0 || seatId >= seats.length || seats[seatId] == null) {
+      throw new IllegalArgumentException("no seat with id " + seatId);
+    }
+  }
+
+  public boolean isBooked(int seatId) {
+    checkSeat(seatId);
+    return (words.get(seatId >>> 6) & (1L << seatId)) != 0;
+  }
+
+  // returns false when the seat is booked already
+  public boolean book(int seatId) {
+    checkSeat(seatId);
+    long bit = 1L << seatId;
+    int word = seatId >>> 6;
+    for (;;) {
+      long w = words.get(word);
+      if ((w & bit) != 0) {
+        return false;
+      }
+      if (words.compareAndSet(word, w, w | bit)) {
+        freeSeats.decrementAndGet(seats[seatId].getSeatCategory().ordinal());
+        return true;
+      }
+    }
+  }
+
+  // Books every seat or none of them, returning false when any is booked
+  // already. Seats are claimed a word at a time in word order, a word whose
+  // seats are not all free undoes the words claimed before it.
+  public boolean bookAll(int[] seatIds) {
+    int[] ids = seatIds.clone();
+    Arrays.sort(ids);
+    for (int id : ids) {
+      checkSeat(id);
+    }
+    int i = 0;
+    while (i < ids.length) {
+      int word = ids[i] >>> 6;
+      long mask = 0;
+      int start = i;
+      for (; i < ids.length && ids[i] >>> 6 == word; i++) {
+        mask |= 1L << ids[i];
+      }
+      if (!claim(word, mask)) {
+        // undo the words before this one, they are still ours
+        for (int j = 0; j < start;) {
+          int claimed = ids[j] >>> 6;
+          long claimedMask = 0;
+          for (; j < start && ids[j] >>> 6 == claimed; j++) {
+            claimedMask |= 1L << ids[j];
+          }
+          unclaim(claimed, claimedMask);
+        }
+        return false;
+      }
+    }
+    for (int j = 0; j < ids.length; j++) {
+      if (j == 0 || ids[j] != ids[j - 1]) {
+        freeSeats.decrementAndGet(seats[ids[j]].getSeatCategory().ordinal());
+      }
+    }
+    return true;
+  }
+
+  // sets every bit of mask in the word if none of them is set yet
+  private boolean claim(int word, long mask) {
+    for (;;) {
+      long w = words.get(word);
+      if ((w & mask) != 0) {
+        return false;
+      }
+      if (words.compareAndSet(word, w, w | mask)) {
+        return true;
+      }
+    }
+  }
+
+  // clears every bit of mask in the word
+  private void unclaim(int word, long mask) {
+    for (;;) {
+      long w = words.get(word);
+      if (words.compareAndSet(word, w, w & ~mask)) {
+        return;
+      }
+    }
+  }
+
+  // returns false when the seat was not booked
+  public boolean release(int seatId) {
+    checkSeat(seatId);
+    long bit = 1L << seatId;
+    int word = seatId >>> 6;
+    for (;;) {
+      long w = words.get(word);
+      if ((w & bit) == 0) {
+        return false;
+      }
+      if (words.compareAndSet(word, w, w & ~bit)) {
+        freeSeats.incrementAndGet(seats[seatId].getSeatCategory().ordinal());
+        return true;
+      }
+    }
+  }
+
+  // Ids of the booked seats in id order. Each word is read once and only its
+  // set bits are visited, so the cost follows the booked seats rather than
+  // the size of the screen.
+  public int[] bookedSeatIds() {
+    int n = words.length();
+    long[] snapshot = new long[n];
+    int count = 0;
+    for (int i = 0; i < n; i++) {
+      snapshot[i] = words.get(i);
+      count += Long.bitCount(snapshot[i]);
+    }
+    int[] ids = new int[count];
+    int k = 0;
+    for (int i = 0; i < n; i++) {
+      for (long w = snapshot[i]; w != 0; w &= w - 1) {
+        ids[k++] = (i << 6) + Long.numberOfTrailingZeros(w);
+      }
+    }
+    return ids;
+  }
+
+  public int freeCount(SeatCategory category) {
+    return freeSeats.get(category.ordinal());
+  }
+
+  public Seat getSeat(int seatId) {
+    checkSeat(seatId);
+    return seats[seatId];
+  }
+
+  public SeatCategory getSeatCategory(int seatId) {
+    return getSeat(seatId).getSeatCategory();
+  }
+}
@@ -3,24 +3,55 @@ package models;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import models.enums.SeatCategory;
 
 public class Show {
+  public static final long DEFAULT_HOLD_TTL_MILLIS = 10 * 60 * 1000;
+
   private int id;
   private Movie movie;
   private LocalDateTime startTime;
-  private List<Seat> bookedSeats;
+  private SeatBitmap seats;
   private Screen screen;
+  // how long seats are held for a user before they pay
+  private long holdTtlMillis = DEFAULT_HOLD_TTL_MILLIS;
 
   public Show(int id, Movie movie, LocalDateTime startTime, Screen screen) {
     this.id = id;
     this.movie = movie;
     this.startTime = startTime;
     this.screen = screen;
-    bookedSeats = new ArrayList<>();
+    seats = new SeatBitmap(screen.getSeats());
   }
 
   public void addBookedTicket(Seat seat) {
-    bookedSeats.add(seat);
+    seats.book(seat.getId());
+  }
+
+  public boolean isBooked(int seatId) {
+    return seats.isBooked(seatId);
+  }
+
+  // returns false when the seat is booked already
+  public boolean book(int seatId) {
+    return seats.book(seatId);
+  }
+
+  // books every seat or none, returns false when any is booked already
+  public boolean bookAll(int... seatIds) {
+    return seats.bookAll(seatIds);
+  }
+
+  public boolean release(int seatId) {
+    return seats.release(seatId);
+  }
+
+  public int freeCount(SeatCategory category) {
+    return seats.freeCount(category);
+  }
+
+  public Seat getSeat(int seatId) {
+    return seats.getSeat(seatId);
   }
 
   public int getId() {
@@ -35,18 +66,36 @@ public class Show {
     return screen;
   }
 
+  public long getHoldTtlMillis() {
+    return holdTtlMillis;
+  }
+
+  public void setHoldTtlMillis(long holdTtlMillis) {
+    if (holdTtlMillis < 0) {
+      throw new IllegalArgumentException("hold ttl should not be negative");
+    }
+    this.holdTtlMillis = holdTtlMillis;
+  }
+
   public LocalDateTime getStartTime() {
     return startTime;
   }
 
+  // builds a new list, in seat id order, from the booked bits only
   public List<Seat> getBookedSeats() {
-    return bookedSeats;
+    int[] ids = seats.bookedSeatIds();
+    List<Seat> list = new ArrayList<>(ids.length);
+    for (int id : ids) {
+      list.add(seats.getSeat(id));
+    }
+    return list;
   }
 
   public List<Integer> getBookedSeatIds() {
-    List<Integer> list = new ArrayList<>();
-    for (Seat seat : bookedSeats) {
-      list.add(seat.getId());
+    int[] ids = seats.bookedSeatIds();
+    List<Integer> list = new ArrayList<>(ids.length);
+    for (int id : ids) {
+      list.add(id);
     }
     return list;
   }
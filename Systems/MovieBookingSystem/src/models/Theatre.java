@@ -1,12 +1,18 @@
 package models;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+// Once a theatre is mapped to a city, TheatreController indexes its shows for
+// the searches, so from then on shows are added with
+// TheatreController.addShow() only. setShows() and addShow() here do not
+// update the index, and getShows() can not be modified.
 public class Theatre {
   public int id;
   public String city;
   public List<Screen> screens;
-  public List<Show> shows;
+  private List<Show> shows = new ArrayList<>();
 
   public Theatre(int id, String city) {
     this.id = id;
@@ -17,8 +23,14 @@ public class Theatre {
     this.screens = screens;
   }
 
+  // copies the shows, for a theatre not mapped to a city yet
   public void setShows(List<Show> shows) {
-    this.shows = shows;
+    this.shows = new ArrayList<>(shows);
+  }
+
+  // use TheatreController.addShow() for a theatre mapped to a city
+  public void addShow(Show show) {
+    shows.add(show);
   }
 
   public int getId() {
@@ -34,6 +46,6 @@ public class Theatre {
   }
 
   public List<Show> getShows() {
-    return shows;
+    return Collections.unmodifiableList(shows);
   }
 }
\ No newline at end of file
@@ -0,0 +1,8 @@
+package models.enums;
+
+public enum HoldStatus {
+  HELD,
+  CONFIRMED,
+  RELEASED,
+  EXPIRED
+}